@@ -0,0 +1,171 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Synthetic dictionary and term sequences shared by benchmarks.
+ * <ul>
+ *     <li><b>hit</b> - a few hundred distinct terms, everything is served from the cache</li>
+ *     <li><b>miss</b> - uniformly distributed terms of a vocabulary much larger than the cache</li>
+ *     <li><b>zipf</b> - Zipf distributed (s = 1) terms of the whole vocabulary, close to natural text</li>
+ * </ul>
+ */
+final class BenchmarkData {
+
+    static final String HIT = "hit";
+    static final String MISS = "miss";
+    static final String ZIPF = "zipf";
+
+    // cache sizes used by benchmarks; miss heavy vocabulary is much larger
+    static final int MAX_L1 = 10000;
+    static final int MAX_L2 = 20000;
+
+    static final int BASE_WORDS = 50000;
+    static final int HIT_TERMS = 500;
+    static final int SEQUENCE_LENGTH = 1 << 16;
+
+    private static final String AFFIX =
+            "SET UTF-8\n" +
+            "\n" +
+            "SFX S Y 1\n" +
+            "SFX S   0     s          .\n" +
+            "\n" +
+            "SFX D Y 1\n" +
+            "SFX D   0     ed         .\n" +
+            "\n" +
+            "SFX G Y 1\n" +
+            "SFX G   0     ing        .\n";
+
+    private static final String[] SUFFIXES = { "", "s", "ed", "ing" };
+
+    final Dictionary dictionary;
+    // all surface forms; base words first
+    final String[] vocabulary;
+
+    private BenchmarkData(Dictionary dictionary, String[] vocabulary) {
+        this.dictionary = dictionary;
+        this.vocabulary = vocabulary;
+    }
+
+    /**
+     * Generates dictionary of random base words with suffix rules; the same seed gives the same data
+     */
+    static BenchmarkData create(long seed) throws Exception {
+        Random random = new Random(seed);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < BASE_WORDS) {
+            words.add(randomWord(random));
+        }
+        StringBuilder dic = new StringBuilder().append(words.size()).append('\n');
+        List<String> vocabulary = new ArrayList<>(words.size() * SUFFIXES.length);
+        for (String word : words) {
+            dic.append(word).append("/SDG\n");
+        }
+        for (String suffix : SUFFIXES) {
+            for (String word : words) {
+                vocabulary.add(word + suffix);
+            }
+        }
+        try (Directory directory = new RAMDirectory();
+             InputStream affix = new ByteArrayInputStream(AFFIX.getBytes(StandardCharsets.UTF_8));
+             InputStream dictionary = new ByteArrayInputStream(dic.toString().getBytes(StandardCharsets.UTF_8))) {
+            Dictionary parsed = new Dictionary(directory, "hunspell", affix, dictionary);
+            return new BenchmarkData(parsed, vocabulary.toArray(new String[0]));
+        }
+    }
+
+    private static String randomWord(Random random) {
+        char[] chars = new char[4 + random.nextInt(6)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Returns sequence of terms following the distribution
+     * @param distribution One of {@link #HIT}, {@link #MISS}, {@link #ZIPF}
+     * @param seed Each thread uses its own seed
+     */
+    char[][] sequence(String distribution, long seed) {
+        Random random = new Random(seed);
+        char[][] sequence = new char[SEQUENCE_LENGTH][];
+        double[] cdf = ZIPF.equals(distribution) ? zipfCdf(vocabulary.length) : null;
+        // ranks of zipf distribution are spread over the vocabulary
+        int[] permutation = cdf != null ? permutation(vocabulary.length, new Random(0)) : null;
+        for (int i = 0; i < sequence.length; i++) {
+            int index;
+            switch (distribution) {
+                case HIT:
+                    index = random.nextInt(HIT_TERMS);
+                    break;
+                case MISS:
+                    index = random.nextInt(vocabulary.length);
+                    break;
+                case ZIPF:
+                    int rank = Arrays.binarySearch(cdf, random.nextDouble());
+                    index = permutation[Math.min(rank < 0 ? -rank - 1 : rank, cdf.length - 1)];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown distribution "+distribution);
+            }
+            sequence[i] = vocabulary[index].toCharArray();
+        }
+        return sequence;
+    }
+
+    /**
+     * Returns whitespace separated text of the sequence
+     * @param sequence Terms
+     * @param offset First term
+     * @param length Number of terms
+     */
+    static String text(char[][] sequence, int offset, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(sequence[(offset + i) % sequence.length]);
+        }
+        return builder.toString();
+    }
+
+    private static double[] zipfCdf(int size) {
+        double[] cdf = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / (i + 1);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int[] permutation(int size, Random random) {
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+        return permutation;
+    }
+}
@@ -0,0 +1,140 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of the whole token stream, {@link HunspellCachedStemFilter} against {@link HunspellStemFilter}.
+ * One operation analyzes a document of {@value #DOCUMENT_TERMS} terms.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FilterBenchmark {
+
+    static final int DOCUMENT_TERMS = 1000;
+    static final int DOCUMENTS = 64;
+    static final int BATCH_SIZE = 128;
+
+    private static final AtomicInteger TRIALS = new AtomicInteger();
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param({ BenchmarkData.HIT, BenchmarkData.MISS, BenchmarkData.ZIPF })
+        String distribution;
+
+        @Param({ "false", "true" })
+        boolean longestOnly;
+
+        BenchmarkData data;
+        String dictionaryUniqIdent;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            System.setProperty(StemmerCachedWrapper.PROPERTY_MAX_L1, Integer.toString(BenchmarkData.MAX_L1));
+            System.setProperty(StemmerCachedWrapper.PROPERTY_MAX_L2, Integer.toString(BenchmarkData.MAX_L2));
+            this.data = BenchmarkData.create(42);
+            this.dictionaryUniqIdent = "benchmark-filter-" + distribution + "-" + TRIALS.incrementAndGet();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PerThread {
+
+        // streams are reused the same way analyzers reuse them
+        Tokenizer cachedTokenizer;
+        TokenStream cached;
+        Tokenizer batchTokenizer;
+        TokenStream batch;
+        Tokenizer baselineTokenizer;
+        TokenStream baseline;
+        String[] documents;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared, ThreadParams threadParams) {
+            this.cachedTokenizer = new WhitespaceTokenizer();
+            this.cached = new HunspellCachedStemFilter(cachedTokenizer, shared.data.dictionary, shared.dictionaryUniqIdent, true, shared.longestOnly);
+            this.batchTokenizer = new WhitespaceTokenizer();
+            this.batch = new HunspellCachedBatchStemFilter(batchTokenizer, new StemmerCachedWrapper(new Stemmer(shared.data.dictionary), shared.dictionaryUniqIdent),
+                    true, shared.longestOnly, BATCH_SIZE);
+            this.baselineTokenizer = new WhitespaceTokenizer();
+            this.baseline = new HunspellStemFilter(baselineTokenizer, shared.data.dictionary, true, shared.longestOnly);
+            char[][] sequence = shared.data.sequence(shared.distribution, threadParams.getThreadIndex());
+            this.documents = new String[DOCUMENTS];
+            for (int i = 0; i < DOCUMENTS; i++) {
+                documents[i] = BenchmarkData.text(sequence, i * DOCUMENT_TERMS, DOCUMENT_TERMS);
+            }
+        }
+
+        String nextDocument() {
+            String document = documents[position];
+            position = (position + 1) % documents.length;
+            return document;
+        }
+    }
+
+    @Benchmark
+    public int cachedFilter(PerThread state) throws IOException {
+        state.cachedTokenizer.setReader(new StringReader(state.nextDocument()));
+        return consume(state.cached);
+    }
+
+    @Benchmark
+    public int cachedBatchFilter(PerThread state) throws IOException {
+        state.batchTokenizer.setReader(new StringReader(state.nextDocument()));
+        return consume(state.batch);
+    }
+
+    @Benchmark
+    public int baselineFilter(PerThread state) throws IOException {
+        state.baselineTokenizer.setReader(new StringReader(state.nextDocument()));
+        return consume(state.baseline);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int cachedFilterConcurrent(PerThread state) throws IOException {
+        return cachedFilter(state);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int baselineFilterConcurrent(PerThread state) throws IOException {
+        return baselineFilter(state);
+    }
+
+    private static int consume(TokenStream stream) throws IOException {
+        CharTermAttribute termAtt = stream.getAttribute(CharTermAttribute.class);
+        int hash = 0;
+        stream.reset();
+        while (stream.incrementToken()) {
+            hash = 31 * hash + termAtt.length();
+        }
+        stream.end();
+        stream.close();
+        return hash;
+    }
+}
@@ -0,0 +1,111 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of {@link StemmerCachedWrapper} against plain {@link Stemmer}, one term per operation.
+ * Run with gc profiler (see build.gradle) to see allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StemmerBenchmark {
+
+    private static final AtomicInteger TRIALS = new AtomicInteger();
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param({ BenchmarkData.HIT, BenchmarkData.MISS, BenchmarkData.ZIPF })
+        String distribution;
+
+        BenchmarkData data;
+        String dictionaryUniqIdent;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            System.setProperty(StemmerCachedWrapper.PROPERTY_MAX_L1, Integer.toString(BenchmarkData.MAX_L1));
+            System.setProperty(StemmerCachedWrapper.PROPERTY_MAX_L2, Integer.toString(BenchmarkData.MAX_L2));
+            this.data = BenchmarkData.create(42);
+            // every trial starts with empty caches
+            this.dictionaryUniqIdent = "benchmark-" + distribution + "-" + TRIALS.incrementAndGet();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PerThread {
+
+        StemmerCachedWrapper cached;
+        Stemmer stemmer;
+        char[][] sequence;
+        int position;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared, ThreadParams threadParams) {
+            this.stemmer = new Stemmer(shared.data.dictionary);
+            this.cached = new StemmerCachedWrapper(new Stemmer(shared.data.dictionary), shared.dictionaryUniqIdent);
+            this.sequence = shared.data.sequence(shared.distribution, threadParams.getThreadIndex());
+        }
+
+        char[] next() {
+            char[] term = sequence[position];
+            position = (position + 1) & (sequence.length - 1);
+            return term;
+        }
+    }
+
+    @Benchmark
+    public List<?> cachedStem(PerThread state) {
+        char[] term = state.next();
+        return state.cached.stem(term, term.length);
+    }
+
+    @Benchmark
+    public List<?> cachedUniqueStems(PerThread state) {
+        char[] term = state.next();
+        return state.cached.uniqueStems(term, term.length);
+    }
+
+    @Benchmark
+    public List<?> baselineStem(PerThread state) {
+        char[] term = state.next();
+        return state.stemmer.stem(term, term.length);
+    }
+
+    @Benchmark
+    public List<?> baselineUniqueStems(PerThread state) {
+        char[] term = state.next();
+        return state.stemmer.uniqueStems(term, term.length);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<?> cachedUniqueStemsConcurrent(PerThread state) {
+        char[] term = state.next();
+        return state.cached.uniqueStems(term, term.length);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<?> baselineUniqueStemsConcurrent(PerThread state) {
+        char[] term = state.next();
+        return state.stemmer.uniqueStems(term, term.length);
+    }
+}
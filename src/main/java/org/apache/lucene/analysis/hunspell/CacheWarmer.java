@@ -0,0 +1,297 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.StemPool;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.analysis.hunspell.cache.internal.AbstractCacheMap;
+import org.apache.lucene.analysis.hunspell.cache.internal.NegativeCache;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+/**
+ * Fills cache of stems before the first documents or queries come, e.g. after restart or dictionary update.
+ * Terms are stemmed in parallel by fork-join pool, every task of {@link #TASK_TERMS} terms has its own {@link Stemmer},
+ * so no stemmer outlives the warm-up in the threads of the pool;
+ * results are loaded into the cache ordered by frequency. The most frequent terms go into the second level
+ * (hot set), the rest into the first level; within a level the most frequent terms are pushed last, so they
+ * are evicted last. Terms without stems go into the negative set of the cache, if there is one.
+ * Terms already present in the cache are skipped. Cache of wrappers folding keys is filled under the folded keys,
+ * see {@link StemmerCachedWrapper#setKeyFolding(Dictionary)}.
+ */
+public final class CacheWarmer {
+
+    public static final Logger LOGGER = Logger.getLogger(CacheWarmer.class.getName());
+
+    // terms stemmed by one fork-join task
+    static final int TASK_TERMS = 1024;
+
+    private CacheWarmer() {}
+
+    /**
+     * Reads term list, one term per line, optionally followed by whitespace and frequency.
+     * Terms with frequency are sorted by it (descending), otherwise order of the file is kept;
+     * empty lines and lines starting with <code>#</code> are ignored, lines with malformed frequency are skipped.
+     * @param in Term list in UTF-8; it is not closed
+     * @param limit Maximum number of returned terms, non-positive means all
+     * @return Terms ordered from the most frequent
+     * @throws IOException
+     */
+    public static List<String> readTermList(InputStream in, int limit) throws IOException {
+        List<String> terms = new ArrayList<>();
+        List<Long> frequencies = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        int lineNumber = 0;
+        int malformed = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            long frequency = 0L;
+            if (parts.length > 1) {
+                try {
+                    frequency = Long.parseLong(parts[1]);
+                } catch (NumberFormatException e) {
+                    if (malformed++ == 0) {
+                        LOGGER.warning("Malformed frequency at line " + lineNumber + " of term list: " + line);
+                    }
+                    continue;
+                }
+            }
+            terms.add(parts[0]);
+            frequencies.add(frequency);
+        }
+        if (malformed > 1) {
+            LOGGER.warning("Skipped " + malformed + " lines of term list with malformed frequency");
+        }
+        List<Integer> order = new ArrayList<>(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            order.add(i);
+        }
+        // stable, lines without frequency keep their order
+        order.sort(Comparator.comparing((Integer i) -> frequencies.get(i)).reversed());
+        int count = limit > 0 ? Math.min(limit, terms.size()) : terms.size();
+        List<String> sorted = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sorted.add(terms.get(order.get(i)));
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the most frequent terms of the field; frequency is total term frequency when the field indexes it,
+     * document frequency otherwise. The field must contain unstemmed terms.
+     * @param reader Index reader
+     * @param field Field name
+     * @param limit Maximum number of returned terms
+     * @return Terms ordered from the most frequent
+     * @throws IOException
+     */
+    public static List<String> topTerms(IndexReader reader, String field, int limit) throws IOException {
+        List<String> result = new ArrayList<>();
+        Terms terms = MultiFields.getTerms(reader, field);
+        if (terms == null || limit <= 0) {
+            return result;
+        }
+        // the least frequent of the kept terms on top
+        PriorityQueue<TermFrequency> top = new PriorityQueue<>(limit, Comparator.comparingLong(t -> t.frequency));
+        TermsEnum termsEnum = terms.iterator();
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            long totalTermFreq = termsEnum.totalTermFreq();
+            long frequency = totalTermFreq > 0 ? totalTermFreq : termsEnum.docFreq();
+            if (top.size() < limit) {
+                top.add(new TermFrequency(term.utf8ToString(), frequency));
+            } else if (top.peek().frequency < frequency) {
+                top.poll();
+                top.add(new TermFrequency(term.utf8ToString(), frequency));
+            }
+        }
+        while (!top.isEmpty()) {
+            result.add(top.poll().term);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Stems terms in parallel and loads them into the cache
+     * @param dictionary Dictionary of the cache
+     * @param cacheMap Cache to fill
+     * @param terms Terms ordered from the most frequent
+     * @param foldKeys True if the cache is used by wrappers folding keys
+     * @param pool Fork-join pool doing the stemming
+     * @return Number of loaded entries
+     */
+    public static int warm(Dictionary dictionary, CacheMap cacheMap, List<String> terms, boolean foldKeys, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        // folded term has up to three entries, one per case component
+        int width = foldKeys ? 3 : 1;
+        CacheItem[] items = new CacheItem[terms.size() * width];
+        pool.invoke(new StemTask(dictionary, foldKeys, cacheMap.getStemPool(), terms, items, 0, terms.size()));
+        int loaded = load(cacheMap, items);
+        LOGGER.info("Warmed cache by " + loaded + " of " + terms.size() + " terms in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return loaded;
+    }
+
+    /**
+     * Stems terms in parallel and loads them into the cache of wrappers which do not fold keys
+     * @see #warm(Dictionary, CacheMap, List, boolean, ForkJoinPool)
+     */
+    public static int warm(Dictionary dictionary, CacheMap cacheMap, List<String> terms, ForkJoinPool pool) {
+        return warm(dictionary, cacheMap, terms, false, pool);
+    }
+
+    /**
+     * Stems terms by the common fork-join pool (all cores) and loads them into the cache
+     * @see #warm(Dictionary, CacheMap, List, boolean, ForkJoinPool)
+     */
+    public static int warm(Dictionary dictionary, CacheMap cacheMap, List<String> terms, boolean foldKeys) {
+        return warm(dictionary, cacheMap, terms, foldKeys, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Stems terms by the common fork-join pool (all cores) and loads them into the cache of wrappers which do not fold keys
+     * @see #warm(Dictionary, CacheMap, List, boolean, ForkJoinPool)
+     */
+    public static int warm(Dictionary dictionary, CacheMap cacheMap, List<String> terms) {
+        return warm(dictionary, cacheMap, terms, false);
+    }
+
+    // items are ordered from the most frequent
+    static int load(CacheMap cacheMap, CacheItem[] items) {
+        List<CacheItem> missing = new ArrayList<>(items.length);
+        NegativeCache negativeCache = cacheMap.getNegativeCache();
+        // case variants of a term share entries
+        Set<TermKey> seen = new HashSet<>();
+        int negative = 0;
+        for (CacheItem item : items) {
+            if (item == null || !seen.add(item.getKey())) {
+                continue;
+            }
+            if (negativeCache != null && item.getStemCount() == 0) {
+                if (!negativeCache.contains(item.getKey())) {
+                    negativeCache.add(item.getKey());
+                    negative++;
+                }
+            } else if (cacheMap.getFirstLevel().peekItem(item.getKey()) == null
+                    && cacheMap.getSecondLevel().peekItem(item.getKey()) == null) {
+                missing.add(item);
+            }
+        }
+        int toSecond = room(cacheMap.getSecondLevel(), missing.size());
+        int toFirst = room(cacheMap.getFirstLevel(), missing.size() - toSecond);
+        for (int i = toSecond - 1; i >= 0; i--) {
+            CacheItem item = missing.get(i);
+            cacheMap.getSecondLevel().pushItem(item.getKey(), item);
+        }
+        for (int i = toSecond + toFirst - 1; i >= toSecond; i--) {
+            CacheItem item = missing.get(i);
+            cacheMap.getFirstLevel().pushItem(item.getKey(), item);
+        }
+        return toSecond + toFirst + negative;
+    }
+
+    private static int room(AbstractCacheMap level, int wanted) {
+        int max = level.getEffectiveMaximumSize();
+        if (max == AbstractCacheMap.UNBOUNDED) {
+            return wanted;
+        }
+        return Math.max(0, Math.min(wanted, max - level.size()));
+    }
+
+    // tasks only run in the pool, they are never serialized
+    @SuppressWarnings("serial")
+    private static final class StemTask extends RecursiveAction {
+
+        private final Dictionary dictionary;
+        private final boolean foldKeys;
+        private final StemPool stemPool;
+        private final List<String> terms;
+        private final CacheItem[] items;
+        private final int from;
+        private final int to;
+
+        StemTask(Dictionary dictionary, boolean foldKeys, StemPool stemPool, List<String> terms, CacheItem[] items, int from, int to) {
+            this.dictionary = dictionary;
+            this.foldKeys = foldKeys;
+            this.stemPool = stemPool;
+            this.terms = terms;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK_TERMS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new StemTask(dictionary, foldKeys, stemPool, terms, items, from, middle),
+                        new StemTask(dictionary, foldKeys, stemPool, terms, items, middle, to));
+                return;
+            }
+            // stemmer of the task is garbage when the task ends, pool threads keep nothing
+            Stemmer stemmer = new Stemmer(dictionary);
+            if (!foldKeys) {
+                for (int i = from; i < to; i++) {
+                    items[i] = stem(stemmer, new TermKey(terms.get(i)));
+                }
+                return;
+            }
+            KeyFolding keyFolding = new KeyFolding(dictionary);
+            for (int i = from; i < to; i++) {
+                char[] term = terms.get(i).toCharArray();
+                TermKey key = new TermKey(keyFolding.clean(term, 0, term.length).toString());
+                int components = keyFolding.split(key);
+                if (components == 0) {
+                    items[i * 3] = stem(stemmer, key);
+                }
+                for (int c = 0; c < components; c++) {
+                    items[i * 3 + c] = stem(stemmer, keyFolding.component(c).copy());
+                }
+            }
+        }
+
+        // key owns its chars
+        private CacheItem stem(Stemmer stemmer, TermKey key) {
+            if (KeyFolding.isComponent(key)) {
+                return CacheItem.copyOf(key, KeyFolding.stemComponent(stemmer, key), stemPool);
+            }
+            return CacheItem.copyOf(key, stemmer.stem(key.getChars(), key.getLength()), stemPool);
+        }
+    }
+
+    private static final class TermFrequency {
+
+        final String term;
+        final long frequency;
+
+        TermFrequency(String term, long frequency) {
+            this.term = term;
+            this.frequency = frequency;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.util.ResourceLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hash of affix and dictionary files. Files are streamed through the digest, nothing is buffered,
+ * so hashing is cheap even when the parsed dictionary is already shared and files are not parsed at all.
+ */
+final class DictionaryHash {
+
+    private DictionaryHash() {}
+
+    /**
+     * Computes hex encoded SHA-256 over all files; every file is followed by its length, so
+     * moving bytes between files changes the hash
+     * @param loader
+     * @param affixFile
+     * @param dictionaryFiles
+     * @return
+     * @throws IOException
+     */
+    static String hash(ResourceLoader loader, String affixFile, String[] dictionaryFiles) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        update(loader, affixFile, digest, buffer);
+        for (String file : dictionaryFiles) {
+            update(loader, file, digest, buffer);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void update(ResourceLoader loader, String file, MessageDigest digest, byte[] buffer) throws IOException {
+        long length = 0;
+        try (InputStream is = loader.openResource(file)) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                length += read;
+            }
+        }
+        for (int i = 0; i < 8; i++) {
+            digest.update((byte) (length >>> (56 - 8 * i)));
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,161 @@
+package org.apache.lucene.analysis.hunspell;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Process wide registry of parsed dictionaries. Factories using the same dictionary content
+ * (and the same case handling) share one {@link Dictionary} instance instead of parsing it again
+ * for every field type, core and reload.
+ * <p>
+ * Every user holds a {@link Lease}; dictionary is dropped from the registry when the last lease is released.
+ * Lease is released explicitly or, because analysis factories have no close method, when its owner is garbage collected.
+ * Caches of stems share the key of the dictionary and are dropped together with it.
+ */
+final class DictionaryRegistry {
+
+    public static final Logger LOGGER = Logger.getLogger(DictionaryRegistry.class.getName());
+
+    /**
+     * Parses dictionary; called only if the registry does not have it yet
+     */
+    interface Loader {
+        Dictionary load() throws IOException, ParseException;
+    }
+
+    private static final Map<String, Entry> DICTIONARIES = new HashMap<>();
+    private static final ReferenceQueue<Object> OWNERS = new ReferenceQueue<>();
+    // leases must stay reachable until they are released
+    private static final Set<Lease> LEASES = ConcurrentHashMap.newKeySet();
+
+    private DictionaryRegistry() {}
+
+    private static final class Entry {
+        private final String key;
+        private final CompletableFuture<Dictionary> dictionary = new CompletableFuture<>();
+        private int references;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Reference of one owner to shared dictionary
+     */
+    static final class Lease extends PhantomReference<Object> {
+
+        private final Entry entry;
+        private boolean released;
+
+        private Lease(Object owner, Entry entry) {
+            super(owner, OWNERS);
+            this.entry = entry;
+        }
+
+        Dictionary getDictionary() throws IOException {
+            try {
+                return entry.dictionary.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for dictionary", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Unable to load hunspell data!", e.getCause());
+            }
+        }
+
+        /**
+         * Releases this lease; dictionary is dropped when this was the last one
+         */
+        void release() {
+            synchronized (DICTIONARIES) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                LEASES.remove(this);
+                clear();
+                if (--entry.references == 0 && DICTIONARIES.get(entry.key) == entry) {
+                    DICTIONARIES.remove(entry.key);
+                    StemmerCachedWrapper.dropCaches(entry.key);
+                    LOGGER.info("Dropping shared dictionary "+entry.key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns lease of the dictionary identified by key; dictionary is parsed by the first caller,
+     * concurrent callers wait for it
+     * @param owner Object using the dictionary; lease is released when owner becomes unreachable
+     * @param key Content hash of dictionary and affix files followed by options affecting stemming
+     * @param loader Parses the dictionary
+     * @return
+     * @throws IOException
+     */
+    static Lease acquire(Object owner, String key, Loader loader) throws IOException {
+        purge();
+        Entry entry;
+        boolean created = false;
+        Lease lease;
+        synchronized (DICTIONARIES) {
+            entry = DICTIONARIES.get(key);
+            if (entry == null) {
+                entry = new Entry(key);
+                DICTIONARIES.put(key, entry);
+                created = true;
+            }
+            entry.references++;
+            lease = new Lease(owner, entry);
+            LEASES.add(lease);
+        }
+        if (created) {
+            LOGGER.info("Parsing shared dictionary "+key);
+            try {
+                entry.dictionary.complete(loader.load());
+            } catch (IOException | ParseException | RuntimeException e) {
+                entry.dictionary.completeExceptionally(e instanceof ParseException ? new IOException("Unable to load hunspell data!", e) : e);
+            }
+        }
+        try {
+            lease.getDictionary();
+        } catch (IOException | RuntimeException e) {
+            lease.release();
+            throw e;
+        }
+        return lease;
+    }
+
+    /**
+     * Releases leases of owners which have been garbage collected
+     */
+    static void purge() {
+        Reference<?> reference;
+        while ((reference = OWNERS.poll()) != null) {
+            ((Lease) reference).release();
+        }
+    }
+
+    /**
+     * Returns number of live references to the dictionary
+     */
+    static int references(String key) {
+        synchronized (DICTIONARIES) {
+            Entry entry = DICTIONARIES.get(key);
+            return entry != null ? entry.references : 0;
+        }
+    }
+}
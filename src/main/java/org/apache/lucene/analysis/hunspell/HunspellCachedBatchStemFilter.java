@@ -0,0 +1,178 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.CharsRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Variant of {@link HunspellCachedStemFilter} which reads a window of tokens ahead and stems them at once
+ * by {@link StemmerCachedWrapper#stem(char[][], int[], int, List)}; repeated terms of the window are looked up once.
+ * Produces the same tokens as {@link HunspellCachedStemFilter}, only the input is consumed ahead of the output.
+ */
+public class HunspellCachedBatchStemFilter extends TokenFilter {
+
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final PositionIncrementAttribute posIncAtt = addAttribute(PositionIncrementAttribute.class);
+    private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
+    private final StemmerCachedWrapper stemmer;
+
+    private final boolean dedup;
+    private final boolean longestOnly;
+
+    // window of input tokens; keywords are not stemmed and have no term in the batch
+    private final State[] states;
+    private final int[] batchIndex;
+    private final char[][] terms;
+    private final int[] lengths;
+    private final List<List<CharsRef>> stems;
+    private final CharsRef[] longest;
+    private int count;
+    private int position;
+    private boolean exhausted;
+
+    // cursor over the shared stems of the current token, restored from the state captured by the batch
+    private List<CharsRef> tokenStems;
+    private int nextStem;
+    private State tokenState;
+
+    /**
+     * @param input TokenStream whose tokens will be stemmed
+     * @param stemmer Cached stemmer; it must not be used by another filter at the same time
+     * @param dedup true if only unique stems should be output
+     * @param longestOnly true if only the longest term should be output.
+     * @param batchSize Number of tokens stemmed at once
+     */
+    public HunspellCachedBatchStemFilter(TokenStream input, StemmerCachedWrapper stemmer, boolean dedup, boolean longestOnly, int batchSize) {
+        super(input);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.dedup = dedup && longestOnly == false; // don't waste time deduping if longestOnly is set
+        this.stemmer = stemmer;
+        this.longestOnly = longestOnly;
+        this.states = new State[batchSize];
+        this.batchIndex = new int[batchSize];
+        this.terms = new char[batchSize][];
+        for (int i = 0; i < batchSize; i++) {
+            terms[i] = new char[16];
+        }
+        this.lengths = new int[batchSize];
+        this.stems = new ArrayList<>(batchSize);
+        this.longest = new CharsRef[batchSize];
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (tokenStems != null && nextStem < tokenStems.size()) {
+            restoreState(tokenState);
+            posIncAtt.setPositionIncrement(0);
+            CharsRef stem = tokenStems.get(nextStem++);
+            termAtt.copyBuffer(stem.chars, stem.offset, stem.length);
+            return true;
+        }
+        tokenStems = null;
+        tokenState = null;
+
+        if (position == count && !fillBatch()) {
+            return false;
+        }
+
+        int index = batchIndex[position];
+        State state = states[position];
+        restoreState(state);
+        states[position] = null;
+        position++;
+
+        if (index < 0) {
+            return true;
+        }
+
+        if (longestOnly) {
+            // the longest stem is precomputed in the cache
+            if (longest[index] != null) {
+                CharsRef stem = longest[index];
+                termAtt.copyBuffer(stem.chars, stem.offset, stem.length);
+            }
+            return true;
+        }
+
+        List<CharsRef> tokenStems = stems.get(index);
+        if (tokenStems.isEmpty()) { // we do not know this word, return it unchanged
+            return true;
+        }
+
+        // cached stems are immutable, they are read in place
+        CharsRef stem = tokenStems.get(0);
+        termAtt.copyBuffer(stem.chars, stem.offset, stem.length);
+
+        if (tokenStems.size() > 1) {
+            // stacked stems restore the token, only term and position increment differ
+            this.tokenStems = tokenStems;
+            this.tokenState = state;
+            this.nextStem = 1;
+        }
+
+        return true;
+    }
+
+    // reads next window of tokens and stems its terms; false when input is exhausted
+    private boolean fillBatch() throws IOException {
+        count = 0;
+        position = 0;
+        int batched = 0;
+        while (!exhausted && count < states.length) {
+            if (!input.incrementToken()) {
+                exhausted = true;
+                break;
+            }
+            if (keywordAtt.isKeyword()) {
+                batchIndex[count] = -1;
+            } else {
+                int length = termAtt.length();
+                if (terms[batched].length < length) {
+                    terms[batched] = new char[ArrayUtil.oversize(length, Character.BYTES)];
+                }
+                System.arraycopy(termAtt.buffer(), 0, terms[batched], 0, length);
+                lengths[batched] = length;
+                batchIndex[count] = batched++;
+            }
+            states[count++] = captureState();
+        }
+        if (longestOnly) {
+            stemmer.longestStems(terms, lengths, batched, longest);
+        } else if (dedup) {
+            stemmer.uniqueStems(terms, lengths, batched, stems);
+        } else {
+            stemmer.stem(terms, lengths, batched, stems);
+        }
+        return count > 0;
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        stemmer.publishStatistics();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        tokenStems = null;
+        tokenState = null;
+        stems.clear();
+        Arrays.fill(states, null);
+        Arrays.fill(longest, null);
+        count = 0;
+        position = 0;
+        exhausted = false;
+    }
+}
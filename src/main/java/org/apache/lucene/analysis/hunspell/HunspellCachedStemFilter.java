@@ -2,15 +2,14 @@ package org.apache.lucene.analysis.hunspell;
 
 import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.util.AttributeSource;
 import org.apache.lucene.util.CharsRef;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 /**
  * Standard HunspelltemFilter enhanced by cahing possibility
@@ -24,8 +23,13 @@ public class HunspellCachedStemFilter extends TokenFilter  {
     private final KeywordAttribute keywordAtt = addAttribute(KeywordAttribute.class);
     private final StemmerCachedWrapper stemmer;
 
-    private List<CharsRef> buffer;
-    private State savedState;
+    // cursor over the shared cached stems of the current token
+    private CacheItem item;
+    private int nextStem;
+    private int stemCount;
+    // attributes of the current token restored for its stacked stems; reused by all tokens,
+    // created at the first token with more stems after reset
+    private AttributeSource savedAttributes;
 
     private final boolean dedup;
     private final boolean longestOnly;
@@ -58,9 +62,30 @@ public class HunspellCachedStemFilter extends TokenFilter  {
      * @param longestOnly true if only the longest term should be output.
      */
     public HunspellCachedStemFilter(TokenStream input, Dictionary dictionary, String dictionaryUniqueIdent, boolean dedup, boolean longestOnly) {
+        this(input, wrap(dictionary, dictionaryUniqueIdent), dictionaryUniqueIdent, dedup, longestOnly);
+    }
+
+    private static StemmerCachedWrapper wrap(Dictionary dictionary, String dictionaryUniqueIdent) {
+        // unique stems of case insensitive dictionary ignore case, as in HunspellStemFilter
+        StemmerCachedWrapper.getStemCache(dictionaryUniqueIdent).getStemPool().setIgnoreCase(dictionary.ignoreCase);
+        return new StemmerCachedWrapper(new Stemmer(dictionary), dictionaryUniqueIdent);
+    }
+
+    /**
+     * Creates filter stemming by given cached stemmer, e.g. one with its own caches instead of the shared ones
+     *
+     * @param input TokenStream whose tokens will be stemmed
+     * @param stemmer Cached stemmer; it must not be used by another filter at the same time
+     * @param longestOnly true if only the longest term should be output.
+     */
+    public HunspellCachedStemFilter(TokenStream input, StemmerCachedWrapper stemmer, boolean dedup, boolean longestOnly) {
+        this(input, stemmer, null, dedup, longestOnly);
+    }
+
+    private HunspellCachedStemFilter(TokenStream input, StemmerCachedWrapper stemmer, String dictionaryUniqueIdent, boolean dedup, boolean longestOnly) {
         super(input);
         this.dedup = dedup && longestOnly == false; // don't waste time deduping if longestOnly is set
-        this.stemmer = new StemmerCachedWrapper(new Stemmer(dictionary), dictionaryUniqueIdent);
+        this.stemmer = stemmer;
         this.longestOnly = longestOnly;
         this.dictionaryUniqueIdent = dictionaryUniqueIdent;
     }
@@ -69,13 +94,14 @@ public class HunspellCachedStemFilter extends TokenFilter  {
 
     @Override
     public boolean incrementToken() throws IOException {
-        if (buffer != null && !buffer.isEmpty()) {
-            CharsRef nextStem = buffer.remove(0);
-            restoreState(savedState);
+        if (nextStem < stemCount) {
+            savedAttributes.copyTo(this);
             posIncAtt.setPositionIncrement(0);
-            termAtt.setEmpty().append(nextStem);
+            CharsRef stem = stemAt(nextStem++);
+            termAtt.copyBuffer(stem.chars, stem.offset, stem.length);
             return true;
         }
+        item = null;
 
         if (!input.incrementToken()) {
             return false;
@@ -85,47 +111,55 @@ public class HunspellCachedStemFilter extends TokenFilter  {
             return true;
         }
 
-        buffer = dedup ? stemmer.uniqueStems(termAtt.buffer(), termAtt.length()) : stemmer.stem(termAtt.buffer(), termAtt.length());
-
-        if (buffer.isEmpty()) { // we do not know this word, return it unchanged
+        if (longestOnly) {
+            // the longest stem is precomputed in the cache
+            CharsRef longest = stemmer.longestStem(termAtt.buffer(), termAtt.length());
+            if (longest != null) {
+                termAtt.copyBuffer(longest.chars, longest.offset, longest.length);
+            }
             return true;
         }
 
-        if (longestOnly && buffer.size() > 1) {
-            Collections.sort(buffer, lengthComparator);
+        // cached stems are immutable, they are read in place
+        item = stemmer.lookup(termAtt.buffer(), termAtt.length());
+        stemCount = dedup ? item.getUniqueStemCount() : item.getStemCount();
+
+        if (stemCount == 0) { // we do not know this word, return it unchanged
+            return true;
         }
 
-        CharsRef stem = buffer.remove(0);
-        termAtt.setEmpty().append(stem);
+        CharsRef stem = stemAt(0);
+        termAtt.copyBuffer(stem.chars, stem.offset, stem.length);
+        nextStem = 1;
 
-        if (longestOnly) {
-            buffer.clear();
-        } else {
-            if (!buffer.isEmpty()) {
-                savedState = captureState();
+        if (stemCount > 1) {
+            if (savedAttributes == null) {
+                savedAttributes = cloneAttributes();
             }
+            copyTo(savedAttributes);
         }
 
         return true;
     }
 
+    private CharsRef stemAt(int index) {
+        return dedup ? item.getUniqueStem(index) : item.getStem(index);
+    }
+
+    @Override
+    public void end() throws IOException {
+        super.end();
+        stemmer.publishStatistics();
+    }
+
     @Override
     public void reset() throws IOException {
         super.reset();
-        buffer = null;
+        item = null;
+        nextStem = 0;
+        stemCount = 0;
+        // consumers could add attributes before the next use
+        savedAttributes = null;
     }
 
-    static final Comparator<CharsRef> lengthComparator = new Comparator<CharsRef>() {
-        @Override
-        public int compare(CharsRef o1, CharsRef o2) {
-            int cmp = Integer.compare(o2.length, o1.length);
-            if (cmp == 0) {
-                // tie break on text
-                return o2.compareTo(o1);
-            } else {
-                return cmp;
-            }
-        }
-    };
-
 }
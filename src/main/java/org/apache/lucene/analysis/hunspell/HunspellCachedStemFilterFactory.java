@@ -1,13 +1,29 @@
 package org.apache.lucene.analysis.hunspell;
 
+import com.codahale.metrics.MetricRegistry;
 import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.hunspell.cache.CacheBackend;
+import org.apache.lucene.analysis.hunspell.cache.CacheBackendProvider;
+import org.apache.lucene.analysis.hunspell.cache.CacheConfig;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.CachePartition;
+import org.apache.lucene.analysis.hunspell.cache.CacheSnapshot;
+import org.apache.lucene.analysis.hunspell.cache.EvictionPolicy;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.analysis.hunspell.cache.remote.RemoteCacheProvider;
 import org.apache.lucene.analysis.util.ResourceLoader;
 import org.apache.lucene.analysis.util.ResourceLoaderAware;
 import org.apache.lucene.analysis.util.TokenFilterFactory;
+import org.apache.lucene.index.IndexFormatTooNewException;
+import org.apache.lucene.index.IndexFormatTooOldException;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.IOUtils;
+import org.apache.solr.core.SolrInfoBean;
+import org.apache.solr.core.SolrResourceLoader;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
@@ -15,8 +31,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -27,13 +50,70 @@ import java.util.logging.Logger;
  *         dictionary=&quot;en_GB.dic,my_custom.dic&quot;
  *         affix=&quot;en_GB.aff&quot;
  *         ignoreCase=&quot;false&quot;
- *         longestOnly=&quot;false&quot; /&gt;</pre>
+ *         longestOnly=&quot;false&quot;
+ *         snapshotDir=&quot;/var/solr/hunspell-cache&quot;
+ *         snapshotInterval=&quot;600000&quot;
+ *         maxL1=&quot;100000&quot;
+ *         maxL2=&quot;200000&quot;
+ *         evictionPolicy=&quot;tinylfu&quot;
+ *         cacheScope=&quot;shared&quot;
+ *         cachePartition=&quot;index&quot;
+ *         batchSize=&quot;1&quot;
+ *         stemThreads=&quot;4&quot;
+ *         stemBudget=&quot;20&quot;
+ *         warmTerms=&quot;cs_CZ.terms&quot;
+ *         warmCount=&quot;100000&quot;
+ *         stemTable=&quot;cs_CZ.stems&quot;
+ *         backend=&quot;remote&quot;
+ *         backend.host=&quot;stemcache.local&quot;
+ *         backend.port=&quot;7878&quot; /&gt;</pre>
  * Both parameters dictionary and affix are mandatory.
+ * <p>
+ * Cache is tuned by parameters with the same names as the system properties of {@link StemmerCachedWrapper};
+ * system properties are used for parameters which are not given:
+ * maxL1, maxL2 (entries), maxBytesL1, maxBytesL2 (estimated bytes), maxNegative (remembered terms without stems,
+ * 8 bytes each, 0 caches them as other terms), maxQuery (entries pinned by query analysis, 0 disables pinning), surviveL1, surviveL2 (time to live
+ * of an entry since it was cached, milliseconds), idleL1, idleL2 (time to live since the last hit, milliseconds),
+ * l1L2 (hits needed for promotion), hitAging (period after which hit counters are halved, milliseconds), evictionPolicy (tinylfu or fifo), offHeapL3 (bytes) and offHeapL3File.
+ * l0Size is the number of entries of the small private cache of every filter in front of the shared one
+ * (0 disables it); it keeps the most frequent terms without touching the shared cache.
+ * With foldCase=&quot;true&quot; the cache is keyed as the dictionary handles case, so case variants of a term share
+ * their entries: one entry with ignoreCase=&quot;true&quot;, entries of case components with case sensitive dictionary;
+ * warmed and snapshot terms are keyed the same way, see {@link StemmerCachedWrapper#setKeyFolding(Dictionary)}.
+ * With cacheScope=&quot;shared&quot; (default) the cache is shared by the whole JVM and the factory informed last
+ * resizes it; with cacheScope=&quot;core&quot; every factory (core, field type) has caches of its own.
+ * cachePartition tells whether the factory analyzes documents (index, default) or queries (query); terms of queries are
+ * pinned in the cache up to maxQuery entries, so bulk indexing cannot evict them. Query and index analyzers
+ * of a field type must be declared separately for it to take effect.
+ * With batchSize greater than 1 the filter reads that many tokens ahead and stems them at once
+ * ({@link HunspellCachedBatchStemFilter}); it pays off for long documents with repeated terms.
+ * With stemThreads greater than 0 terms missed by the cache are stemmed by a pool of that many threads
+ * ({@link StemExecutor}, at most stemQueue waiting terms); a term not stemmed within stemBudget milliseconds
+ * is emitted unchanged and cached when its stemming finishes.
+ * When snapshotDir is set, cache is written there on JVM shutdown and every snapshotInterval milliseconds (if positive),
+ * and it is loaded back when the filter factory is informed. Snapshot is keyed by content hash of the dictionary
+ * and affix files, so stems of a changed dictionary are never reused. Snapshot of a per core cache is named by the core
+ * too; factories of one core with the same dictionary share it, the one informed last writes it.
+ * When warmTerms is set, the first warmCount terms (all if not set) of that term list (see {@link CacheWarmer#readTermList})
+ * are stemmed in parallel and loaded into the cache when the factory is informed;
+ * {@link #warm(IndexReader, String, int)} does the same with the most frequent terms of an index field.
+ * stemTable is a table of precomputed stems compiled offline by {@link StemTable}; terms missed by the cache
+ * are looked up there and only terms unknown to the table are stemmed.
+ * backend names a {@link CacheBackendProvider} of a second-chance cache, e.g. <code>remote</code>
+ * ({@link RemoteCacheProvider}) shared with other nodes through a {@link org.apache.lucene.analysis.hunspell.cache.remote.StemCacheServer};
+ * parameters starting with <code>backend.</code> are passed to the provider without the prefix.
+ * It is asked for terms missed by the cache before they are stemmed, and it gets every stemmed term.
+ * <p>
+ * Parsed dictionaries and caches of stems are shared by all factories with the same dictionary content and
+ * ignoreCase option; they are identified by content hash of the dictionary and affix files, not by file names.
+ * <p>
+ * Statistics of the caches (hits per level, misses, promotions, evictions, sizes, miss latency) are available
+ * as metrics of this factory in Solr and as <code>org.apache.lucene.analysis.hunspell:type=StemCache</code> MBeans.
  * Dictionaries for many languages are available through the OpenOffice project.
  *
  * for original see {@link https://github.com/apache/lucene-solr/blob/branch_7x/lucene/analysis/common/src/java/org/apache/lucene/analysis/hunspell/HunspellStemFilterFactory.java}
  */
-public class HunspellCachedStemFilterFactory extends TokenFilterFactory implements ResourceLoaderAware {
+public class HunspellCachedStemFilterFactory extends TokenFilterFactory implements ResourceLoaderAware, SolrInfoBean {
 
     public static final Logger LOGGER = Logger.getLogger(HunspellCachedStemFilterFactory.class.getName());
 
@@ -43,6 +123,22 @@ public class HunspellCachedStemFilterFactory extends TokenFilterFactory implemen
     private static final String PARAM_RECURSION_CAP = "recursionCap";
     private static final String PARAM_IGNORE_CASE   = "ignoreCase";
     private static final String PARAM_LONGEST_ONLY  = "longestOnly";
+    private static final String PARAM_SNAPSHOT_DIR  = "snapshotDir";
+    private static final String PARAM_SNAPSHOT_INTERVAL  = "snapshotInterval";
+    private static final String PARAM_CACHE_SCOPE  = "cacheScope";
+    private static final String PARAM_CACHE_PARTITION  = "cachePartition";
+    private static final String PARAM_BATCH_SIZE  = "batchSize";
+    private static final String PARAM_WARM_TERMS  = "warmTerms";
+    private static final String PARAM_WARM_COUNT  = "warmCount";
+    private static final String PARAM_STEM_TABLE  = "stemTable";
+    private static final String PARAM_STEM_THREADS  = "stemThreads";
+    private static final String PARAM_STEM_QUEUE  = "stemQueue";
+    private static final String PARAM_STEM_BUDGET  = "stemBudget";
+    private static final String PARAM_BACKEND  = "backend";
+    private static final String PARAM_BACKEND_PREFIX  = "backend.";
+
+    private static final String SCOPE_SHARED = "shared";
+    private static final String SCOPE_CORE = "core";
 
 
 
@@ -50,9 +146,36 @@ public class HunspellCachedStemFilterFactory extends TokenFilterFactory implemen
     private final String affixFile;
     private final boolean ignoreCase;
     private final boolean longestOnly;
+    private final String snapshotDir;
+    private final long snapshotInterval;
+    private final CacheConfig cacheConfig;
+    private final boolean sharedCache;
+    private final CachePartition partition;
+    private final int batchSize;
+    private final String warmTerms;
+    private final int warmCount;
+    private final String stemTableFile;
+    private final int frontCacheSize;
+    private final boolean foldCase;
+    private final String backendName;
+    private final Map<String,String> backendArgs;
+    private final int stemThreads;
+    private final int stemQueue;
+    private final long stemBudget;
+    private StemTable stemTable;
+    private StemExecutor stemExecutor;
     private Dictionary dictionary;
+    private DictionaryRegistry.Lease dictionaryLease;
 
     private String uniqIdent;
+    private String dictionaryHash;
+
+    // cache of this factory only (cacheScope=core), kept over reloads of the same dictionary
+    private String coreCacheIdent;
+    private CacheMap coreStemCache;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final Set<String> metricNames = ConcurrentHashMap.newKeySet();
 
 
 
@@ -63,6 +186,39 @@ public class HunspellCachedStemFilterFactory extends TokenFilterFactory implemen
         affixFile = get(args, PARAM_AFFIX);
         ignoreCase = getBoolean(args, PARAM_IGNORE_CASE, false);
         longestOnly = getBoolean(args, PARAM_LONGEST_ONLY, false);
+        snapshotDir = get(args, PARAM_SNAPSHOT_DIR);
+        snapshotInterval = Long.parseLong(get(args, PARAM_SNAPSHOT_INTERVAL, "0"));
+        cacheConfig = cacheConfig(args);
+        cacheConfig.setIgnoreCase(ignoreCase);
+        String cacheScope = get(args, PARAM_CACHE_SCOPE, Arrays.asList(SCOPE_SHARED, SCOPE_CORE), SCOPE_SHARED);
+        sharedCache = SCOPE_SHARED.equals(cacheScope);
+        partition = CachePartition.parse(get(args, PARAM_CACHE_PARTITION, CachePartition.INDEX.name()));
+        batchSize = getInt(args, PARAM_BATCH_SIZE, 1);
+        warmTerms = get(args, PARAM_WARM_TERMS);
+        warmCount = getInt(args, PARAM_WARM_COUNT, 0);
+        stemTableFile = get(args, PARAM_STEM_TABLE);
+        frontCacheSize = getInt(args, StemmerCachedWrapper.PROPERTY_L0_SIZE,
+                Integer.getInteger(StemmerCachedWrapper.PROPERTY_L0_SIZE, StemmerCachedWrapper.DEFAULT_L0_SIZE));
+        foldCase = getBoolean(args, StemmerCachedWrapper.PROPERTY_FOLD_CASE, Boolean.getBoolean(StemmerCachedWrapper.PROPERTY_FOLD_CASE));
+        stemThreads = getInt(args, PARAM_STEM_THREADS, 0);
+        stemQueue = getInt(args, PARAM_STEM_QUEUE, 1000);
+        stemBudget = Long.parseLong(get(args, PARAM_STEM_BUDGET, "50"));
+        backendName = get(args, PARAM_BACKEND);
+        backendArgs = backendArgs(args);
+        if (backendName != null) {
+            // fail on wrong name when the schema is loaded, not when the first document comes
+            CacheBackendProvider.forName(backendName);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(PARAM_BATCH_SIZE + " must be positive: " + batchSize);
+        }
+        if (stemThreads < 0 || stemQueue < 1 || stemBudget < 0) {
+            throw new IllegalArgumentException(PARAM_STEM_THREADS + " and " + PARAM_STEM_BUDGET + " must not be negative, "
+                    + PARAM_STEM_QUEUE + " must be positive");
+        }
+        if (frontCacheSize < 0) {
+            throw new IllegalArgumentException(StemmerCachedWrapper.PROPERTY_L0_SIZE + " must not be negative: " + frontCacheSize);
+        }
         // this isnt necessary: we properly load all dictionaries.
         // but recognize and ignore for back compat
         getBoolean(args, "strictAffixParsing", true);
@@ -77,42 +233,302 @@ public class HunspellCachedStemFilterFactory extends TokenFilterFactory implemen
         }
     }
 
+    // parameters override system properties
+    private CacheConfig cacheConfig(Map<String,String> args) {
+        CacheConfig config = StemmerCachedWrapper.defaultConfig();
+        String value;
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_MAX_L1)) != null) config.setMaximumSizeL1(Integer.parseInt(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_MAX_L2)) != null) config.setMaximumSizeL2(Integer.parseInt(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_MAX_BYTES_L1)) != null) config.setMaximumBytesL1(Long.parseLong(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_MAX_BYTES_L2)) != null) config.setMaximumBytesL2(Long.parseLong(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_MAX_NEGATIVE)) != null) config.setMaximumSizeNegative(Integer.parseInt(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_MAX_QUERY)) != null) config.setMaximumSizeQuery(Integer.parseInt(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_SURVIVE_L1)) != null) config.setSurviveIntervalL1(Long.parseLong(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_SURVIVE_L2)) != null) config.setSurviveIntervalL2(Long.parseLong(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_IDLE_L1)) != null) config.setIdleIntervalL1(Long.parseLong(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_IDLE_L2)) != null) config.setIdleIntervalL2(Long.parseLong(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_HIT_AGING)) != null) config.setAgingInterval(Long.parseLong(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_L1_L2_THRESHOLD)) != null) config.setSurviveThreshold(Integer.parseInt(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_EVICTION_POLICY)) != null) config.setEvictionPolicy(EvictionPolicy.parse(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_OFF_HEAP_L3)) != null) config.setOffHeapBytes(Integer.parseInt(value));
+        if ((value = get(args, StemmerCachedWrapper.PROPERTY_OFF_HEAP_L3_FILE)) != null) config.setOffHeapFile(value);
+        return config;
+    }
+
+    // removes parameters of the backend from args
+    private static Map<String,String> backendArgs(Map<String,String> args) {
+        Map<String,String> backendArgs = new HashMap<>();
+        for (Iterator<Map.Entry<String,String>> it = args.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String,String> arg = it.next();
+            if (arg.getKey().startsWith(PARAM_BACKEND_PREFIX)) {
+                backendArgs.put(arg.getKey().substring(PARAM_BACKEND_PREFIX.length()), arg.getValue());
+                it.remove();
+            }
+        }
+        return backendArgs;
+    }
+
     @Override
     public void inform(ResourceLoader loader) throws IOException {
         String dicts[] = dictionaryFiles.split(",");
 
-        StringBuilder identifierBuilder = new StringBuilder();
+        // cached stems are identified by the content of the dictionary and options affecting stemming,
+        // never by file names; edited dictionary gets new cache, equal dictionaries share one
+        this.dictionaryHash = DictionaryHash.hash(loader, affixFile, dicts);
+        this.uniqIdent = dictionaryHash + (ignoreCase ? "-ignoreCase" : "");
+
+        // parsed only if no other factory (field type, core) has the same dictionary
+        DictionaryRegistry.Lease previous = this.dictionaryLease;
+        this.dictionaryLease = DictionaryRegistry.acquire(this, uniqIdent, () -> parseDictionary(loader, dicts));
+        this.dictionary = this.dictionaryLease.getDictionary();
+        if (previous != null) {
+            previous.release();
+        }
+
+        if (sharedCache) {
+            // existing shared cache is resized
+            StemmerCachedWrapper.getStemCache(uniqIdent, cacheConfig);
+        } else if (!uniqIdent.equals(coreCacheIdent)) {
+            if (coreStemCache != null) {
+                IOUtils.closeWhileHandlingException(coreStemCache.getBackend());
+                CacheSnapshot.unregister(coreStemCache);
+            }
+            this.coreCacheIdent = uniqIdent;
+            this.coreStemCache = StemmerCachedWrapper.createCacheMap(uniqIdent, StemmerCachedWrapper.STEMS, cacheConfig, false);
+        }
+
+        if (backendName != null) {
+            attachBackend(sharedCache ? StemmerCachedWrapper.getStemCache(uniqIdent) : coreStemCache);
+        }
+
+        // gauges look the cache up on every read, it is never created just by reading statistics
+        StemCacheMetrics.registerGauges(metricRegistry, metricNames, MetricRegistry.name(getCategory().toString(), "hunspell", StemmerCachedWrapper.STEMS),
+                this::getCache);
+
+        if (stemThreads > 0) {
+            // stemmers of the pool belong to the dictionary
+            if (stemExecutor != null) {
+                stemExecutor.close();
+            }
+            stemExecutor = new StemExecutor(dictionary, stemThreads, stemQueue, stemBudget);
+        }
+
+        if (foldCase && !StemmerCachedWrapper.canFoldKeys(dictionary)) {
+            LOGGER.warning("Keys of dictionary "+dictionaryFiles+" cannot be folded, "+StemmerCachedWrapper.PROPERTY_FOLD_CASE+" is ignored");
+        }
+
+        if (stemTableFile != null) {
+            loadStemTable(loader);
+        }
+
+        if (snapshotDir != null) {
+            loadSnapshot(snapshotName(loader));
+        }
+
+        if (warmTerms != null) {
+            try (InputStream terms = loader.openResource(warmTerms)) {
+                warm(CacheWarmer.readTermList(terms, warmCount));
+            }
+        }
+    }
+
+    // the first factory of a shared cache creates its backend
+    private void attachBackend(CacheMap cacheMap) throws IOException {
+        synchronized (cacheMap) {
+            if (cacheMap.getBackend() == null) {
+                CacheBackend backend = CacheBackendProvider.forName(backendName).create(cacheMap, uniqIdent, backendArgs);
+                cacheMap.setBackend(backend);
+                LOGGER.info("Stem cache of "+dictionaryFiles+" is backed by "+backend.getName());
+            }
+        }
+    }
+
+    private void loadStemTable(ResourceLoader loader) throws IOException {
+        StemTable table;
+        try (InputStream is = new BufferedInputStream(loader.openResource(stemTableFile))) {
+            table = StemTable.read(is);
+        } catch (IndexFormatTooOldException | IndexFormatTooNewException e) {
+            LOGGER.warning("Stem table "+stemTableFile+" has another format, it is not used; compile it again");
+            this.stemTable = null;
+            return;
+        }
+        if (uniqIdent.equals(table.getDictionaryKey())) {
+            LOGGER.info("Loaded stem table "+stemTableFile+", "+table.ramBytesUsed()+" bytes");
+            this.stemTable = table;
+        } else {
+            // stems of another dictionary (or other options) would be wrong
+            LOGGER.warning("Stem table "+stemTableFile+" has been compiled for another dictionary, it is not used");
+            this.stemTable = null;
+        }
+    }
+
+    /**
+     * Fills cache used by filters of this factory by the most frequent terms of the index field;
+     * the field must contain unstemmed terms
+     * @param reader Index reader
+     * @param field Field name
+     * @param count Number of terms
+     * @return Number of loaded terms
+     * @throws IOException
+     */
+    public int warm(IndexReader reader, String field, int count) throws IOException {
+        return warm(CacheWarmer.topTerms(reader, field, count));
+    }
+
+    /**
+     * Fills cache used by filters of this factory by given terms, see {@link CacheWarmer}
+     * @param terms Terms ordered from the most frequent
+     * @return Number of loaded terms
+     */
+    public int warm(List<String> terms) {
+        CacheMap cacheMap = getCache();
+        if (cacheMap == null) {
+            cacheMap = StemmerCachedWrapper.getStemCache(uniqIdent);
+        }
+        return CacheWarmer.warm(dictionary, cacheMap, terms, foldsKeys());
+    }
+
+    // filters of the factory fold keys of the cache
+    private boolean foldsKeys() {
+        return foldCase && StemmerCachedWrapper.canFoldKeys(dictionary);
+    }
 
+    private Dictionary parseDictionary(ResourceLoader loader, String[] dicts) throws IOException {
         InputStream affix = null;
         List<InputStream> dictionaries = new ArrayList<>();
         try {
-            dictionaries = new ArrayList<>();
             for (String file : dicts) {
-                identifierBuilder.append(" ").append(file).append(" ");
                 dictionaries.add(loader.openResource(file));
             }
             affix = loader.openResource(affixFile);
 
-            this.uniqIdent = identifierBuilder.toString();
-
             Path tempPath = Files.createTempDirectory(getDefaultTempDir(), "HunspellCached");
             try (Directory tempDir = FSDirectory.open(tempPath)) {
-                this.dictionary = new Dictionary(tempDir, "hunspellcached", affix, dictionaries, ignoreCase);
+                return new Dictionary(tempDir, "hunspellcached", affix, dictionaries, ignoreCase);
             } finally {
                 IOUtils.rm(tempPath);
             }
         } catch (ParseException e) {
-            throw new IOException("Unable to load hunspell data! [dictionary=" + dictionaries + ",affix=" + affixFile + "]", e);
+            throw new IOException("Unable to load hunspell data! [dictionary=" + dictionaryFiles + ",affix=" + affixFile + "]", e);
         } finally {
             IOUtils.closeWhileHandlingException(affix);
             IOUtils.closeWhileHandlingException(dictionaries);
         }
     }
 
+    // shared cache has one snapshot per dictionary, cache of a core one per dictionary and core
+    private String snapshotName(ResourceLoader loader) {
+        if (sharedCache) {
+            return uniqIdent + "." + StemmerCachedWrapper.STEMS + ".snapshot";
+        }
+        String core = null;
+        if (loader instanceof SolrResourceLoader) {
+            SolrResourceLoader solrLoader = (SolrResourceLoader) loader;
+            core = solrLoader.getCoreProperties().getProperty("name");
+            if (core == null && solrLoader.getInstancePath() != null) {
+                core = String.valueOf(solrLoader.getInstancePath().getFileName());
+            }
+        }
+        String scope = core != null ? SCOPE_CORE + "-" + core.replaceAll("[^A-Za-z0-9_.-]", "_") : SCOPE_CORE;
+        return uniqIdent + "." + scope + "." + StemmerCachedWrapper.STEMS + ".snapshot";
+    }
+
+    /**
+     * Loads snapshot of the cache used by filters of this factory and registers it to be written
+     * @param fileName Name of the snapshot file in the snapshot directory
+     */
+    private void loadSnapshot(String fileName) {
+        CacheMap cacheMap = getCache();
+        String snapshotKey = this.uniqIdent;
+        Path file = Paths.get(snapshotDir).resolve(fileName);
+        try {
+            Files.createDirectories(file.getParent());
+            // cache could be already warm, e.g. on core reload
+            if (cacheMap.getFirstLevel().size() == 0 && cacheMap.getSecondLevel().size() == 0) {
+                // snapshot written without folding keeps the entries folding lookups ask for
+                UnaryOperator<TermKey> keys = foldsKeys() ? new KeyFolding(dictionary)::fold : UnaryOperator.identity();
+                int count = CacheSnapshot.read(file, snapshotKey, cacheMap, keys);
+                if (count >= 0) {
+                    LOGGER.info("Loaded "+count+" cached stems from "+file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot load cache snapshot "+file, e);
+        }
+        CacheSnapshot.register(cacheMap, file, snapshotKey, snapshotInterval);
+    }
+
     @Override
     public TokenStream create(TokenStream tokenStream) {
-        HunspellCachedStemFilter hunspellCachedStemFilter = new HunspellCachedStemFilter(tokenStream, dictionary, this.uniqIdent, true, longestOnly);
-        return hunspellCachedStemFilter;
+        StemmerCachedWrapper stemmer = sharedCache
+                ? new StemmerCachedWrapper(new Stemmer(dictionary), uniqIdent)
+                : new StemmerCachedWrapper(new Stemmer(dictionary), coreStemCache);
+        stemmer.setStemTable(stemTable);
+        stemmer.setFrontCacheSize(frontCacheSize);
+        stemmer.setPartition(partition);
+        stemmer.setStemExecutor(stemExecutor);
+        if (foldsKeys()) {
+            stemmer.setKeyFolding(dictionary);
+        }
+        if (batchSize > 1) {
+            return new HunspellCachedBatchStemFilter(tokenStream, stemmer, true, longestOnly, batchSize);
+        }
+        return new HunspellCachedStemFilter(tokenStream, stemmer, true, longestOnly);
+    }
+
+    /**
+     * Returns cache used by filters of this factory; shared cache is only looked up, null if it does not exist
+     */
+    CacheMap getCache() {
+        if (!sharedCache) {
+            return coreStemCache;
+        }
+        return StemmerCachedWrapper.peekCache(uniqIdent);
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getName() + "." + uniqIdent;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Hunspell stem cache [dictionary=" + dictionaryFiles + ",affix=" + affixFile + ",ignoreCase=" + ignoreCase + "]";
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.CACHE;
+    }
+
+    @Override
+    public Set<String> getMetricNames() {
+        return metricNames;
+    }
+
+    @Override
+    public MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    String getDictionaryHash() {
+        return dictionaryHash;
+    }
+
+    String getUniqIdent() {
+        return uniqIdent;
+    }
+
+    StemExecutor getStemExecutor() {
+        return stemExecutor;
+    }
+
+    StemTable getStemTable() {
+        return stemTable;
     }
 
     private static Path DEFAULT_TEMP_DIR;
@@ -0,0 +1,234 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.CharsRef;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache keys normalized as the dictionary handles case, so that case variants of a term share their entries.
+ * <p>
+ * {@link Stemmer#stem(char[], int)} first cleans the term (removes ignored chars, folds case of case insensitive
+ * dictionary), then it unites exact stems of the cleaned term with stems of its case variants: title case term
+ * adds stems of its lower case form, upper case term adds stems of its title case and lower case forms.
+ * Each of these components is cached on its own entry:
+ * <ul>
+ *   <li>term stemmed exactly (lower case or mixed case term, any term of case insensitive dictionary) is one entry
+ *   keyed by the cleaned term; it holds complete stems, as the entry of a wrapper which does not fold;</li>
+ *   <li>exact stems of title and upper case form are keyed by the form followed by {@link #EXACT_STEMS}, so they never
+ *   meet complete stems of the same chars;</li>
+ *   <li>dictionary with KEEPCASE flag stems case variants differently, their stems get keys followed by {@link #VARIANT_STEMS}.</li>
+ * </ul>
+ * So "praha", "Praha" and "PRAHA" share the entry of "praha", "PRAHA" shares the exact stems of "Praha" too,
+ * and a new case variant of a known term costs only stemming of its own form.
+ * <p>
+ * Exact stems are computed by the private stemming step of {@link Stemmer}; when it is not accessible,
+ * only keys of case insensitive dictionaries are folded. Keys of dictionaries with input conversion are
+ * never folded, the conversion need not be idempotent. Instance keeps reusable buffers, it is used by one thread.
+ */
+final class KeyFolding {
+
+    public static final Logger LOGGER = Logger.getLogger(KeyFolding.class.getName());
+
+    /** Last char of the key of exact stems of title or upper case form */
+    static final char EXACT_STEMS = '\uFFFF';
+    /** Last char of the key of stems of case variant, for dictionary with KEEPCASE flag */
+    static final char VARIANT_STEMS = '\uFFFE';
+
+    private static final int EXACT_CASE = 0;
+    private static final int TITLE_CASE = 1;
+    private static final int UPPER_CASE = 2;
+
+    // Stemmer.doStem(char[] word, int length, boolean caseVariant); null if it is not accessible
+    private static final MethodHandle DO_STEM = findDoStem();
+
+    private final Dictionary dictionary;
+    private final CharsRef input = new CharsRef();
+    private final StringBuilder output = new StringBuilder();
+
+    // keys of the components of the last split term, each with its own buffer
+    private final TermKey[] components = {new TermKey(), new TermKey(), new TermKey()};
+    private final char[][] buffers = {new char[16], new char[16], new char[16]};
+
+    KeyFolding(Dictionary dictionary) {
+        if (!canFold(dictionary)) {
+            throw new IllegalArgumentException("Keys cannot be folded by dictionary with input conversion");
+        }
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Returns true if keys can be folded by the dictionary
+     */
+    static boolean canFold(Dictionary dictionary) {
+        return dictionary.iconv == null && (dictionary.ignoreCase || DO_STEM != null);
+    }
+
+    /**
+     * Returns true if the stemmer cleans its input, see {@link #clean(char[], int, int)}
+     */
+    boolean needsCleaning() {
+        return dictionary.needsInputCleaning;
+    }
+
+    /**
+     * Cleans the term as the stemmer does before stemming
+     * @return Cleaned term; it is the reused buffer of this instance, or the term itself when the dictionary needs no cleaning
+     */
+    CharSequence clean(char[] word, int offset, int length) {
+        input.chars = word;
+        input.offset = offset;
+        input.length = length;
+        return dictionary.needsInputCleaning ? dictionary.cleanInput(input, output) : input;
+    }
+
+    /**
+     * Splits cleaned term into keys of its case components, see {@link #component(int)}
+     * @param cleaned Cleaned term
+     * @return Number of the components, 0 if the term is stemmed exactly and its key is the cleaned term itself
+     */
+    int split(TermKey cleaned) {
+        char[] chars = cleaned.getChars();
+        int offset = cleaned.getOffset();
+        int length = cleaned.getLength();
+        int caseType = caseOf(chars, offset, length);
+        if (caseType == EXACT_CASE) {
+            return 0;
+        }
+        boolean keepCase = dictionary.keepcase != -1;
+        int count = 0;
+        // exact stems of the term itself
+        char[] form = buffer(count, length + 1);
+        System.arraycopy(chars, offset, form, 0, length);
+        set(count++, length, EXACT_STEMS);
+        if (caseType == UPPER_CASE) {
+            char[] title = buffer(count, length + 1);
+            title[0] = chars[offset];
+            for (int i = 1; i < length; i++) {
+                title[i] = dictionary.caseFold(chars[offset + i]);
+            }
+            set(count++, length, keepCase ? VARIANT_STEMS : EXACT_STEMS);
+        }
+        // lower case form folds the first char of the title case form
+        char[] lower = buffer(count, length + 1);
+        if (caseType == UPPER_CASE) {
+            System.arraycopy(buffers[1], 0, lower, 0, length);
+        } else {
+            System.arraycopy(chars, offset, lower, 0, length);
+        }
+        lower[0] = dictionary.caseFold(lower[0]);
+        // lower case form stemmed exactly shares the entry of its complete stems
+        char marker = keepCase ? VARIANT_STEMS : caseOf(lower, 0, length) == EXACT_CASE ? 0 : EXACT_STEMS;
+        set(count++, length, marker);
+        return count;
+    }
+
+    /**
+     * Returns key of a component of the last split term; it points to the reused buffer
+     * @param index Index of the component, less than the number returned by {@link #split(TermKey)}
+     */
+    TermKey component(int index) {
+        return components[index];
+    }
+
+    /**
+     * Returns key under which wrapper folding keys finds complete stems stored under the given key,
+     * e.g. by a snapshot written by a wrapper which does not fold
+     * @param key Key owning its chars
+     * @return Key owning its chars, or null if folding lookups never ask for the stems
+     */
+    TermKey fold(TermKey key) {
+        if (isComponent(key)) {
+            return key;
+        }
+        CharSequence cleaned = clean(key.getChars(), key.getOffset(), key.getLength());
+        TermKey folded = cleaned == input ? key : new TermKey(cleaned.toString());
+        return split(folded) == 0 ? folded : null;
+    }
+
+    /**
+     * Returns true if the key is a key of exact or case variant stems of a form
+     */
+    static boolean isComponent(TermKey key) {
+        int length = key.getLength();
+        if (length == 0) {
+            return false;
+        }
+        char last = key.getChars()[key.getOffset() + length - 1];
+        return last == EXACT_STEMS || last == VARIANT_STEMS;
+    }
+
+    /**
+     * Stems the form of a component key, see {@link #isComponent(TermKey)}
+     * @param stemmer Stemmer of the dictionary
+     * @param key Cache owned key; stems could be backed by it
+     */
+    @SuppressWarnings("unchecked")
+    static List<CharsRef> stemComponent(Stemmer stemmer, TermKey key) {
+        char[] chars = key.getChars();
+        int offset = key.getOffset();
+        int length = key.getLength() - 1;
+        char[] form = offset == 0 ? chars : Arrays.copyOfRange(chars, offset, offset + length);
+        try {
+            return (List<CharsRef>) DO_STEM.invokeExact(stemmer, form, length, chars[offset + length] == VARIANT_STEMS);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    // the same classification as the stemmer does
+    private int caseOf(char[] chars, int offset, int length) {
+        if (dictionary.ignoreCase || length == 0 || !Character.isUpperCase(chars[offset])) {
+            return EXACT_CASE;
+        }
+        boolean seenUpper = false;
+        boolean seenLower = false;
+        for (int i = 1; i < length; i++) {
+            boolean upper = Character.isUpperCase(chars[offset + i]);
+            seenUpper |= upper;
+            seenLower |= !upper;
+        }
+        if (!seenLower) {
+            return UPPER_CASE;
+        } else if (!seenUpper) {
+            return TITLE_CASE;
+        }
+        return EXACT_CASE;
+    }
+
+    private char[] buffer(int index, int length) {
+        if (buffers[index].length < length) {
+            buffers[index] = new char[ArrayUtil.oversize(length, Character.BYTES)];
+        }
+        return buffers[index];
+    }
+
+    // marker 0 means the key is the form itself
+    private void set(int index, int length, char marker) {
+        char[] buffer = buffers[index];
+        if (marker != 0) {
+            buffer[length] = marker;
+        }
+        components[index].set(buffer, 0, marker != 0 ? length + 1 : length);
+    }
+
+    private static MethodHandle findDoStem() {
+        try {
+            Method method = Stemmer.class.getDeclaredMethod("doStem", char[].class, int.class, boolean.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Exact stemming of case variants is not accessible, keys of case sensitive dictionaries are not folded", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.apache.lucene.analysis.hunspell;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.CacheStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes statistics of stem caches. Every cache is registered in platform MBean server as
+ * <code>org.apache.lucene.analysis.hunspell:type=StemCache,dictionary=...,family=...</code>;
+ * factories running in Solr add the same values as gauges to their own metric registry.
+ */
+final class StemCacheMetrics {
+
+    public static final Logger LOGGER = Logger.getLogger(StemCacheMetrics.class.getName());
+
+    static final String DOMAIN = "org.apache.lucene.analysis.hunspell";
+
+    private StemCacheMetrics() {}
+
+    static ObjectName objectName(String dictionaryUniqIdent, String family) throws JMException {
+        return new ObjectName(DOMAIN + ":type=StemCache,dictionary=" + ObjectName.quote(dictionaryUniqIdent) + ",family=" + family);
+    }
+
+    /**
+     * Registers cache in platform MBean server; cache registered before under the same name is replaced
+     */
+    static void registerMBean(CacheMap cacheMap, String dictionaryUniqIdent, String family) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(dictionaryUniqIdent, family);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(cacheMap, name);
+        } catch (JMException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Cannot register stem cache MBean", e);
+        }
+    }
+
+    static void unregisterMBean(String dictionaryUniqIdent, String family) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(dictionaryUniqIdent, family);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Cannot unregister stem cache MBean", e);
+        }
+    }
+
+    /**
+     * Registers gauges of one cache family; cache is resolved on every read, so gauges follow cache which
+     * has been dropped and created again
+     * @param registry Metric registry
+     * @param names Collects names of registered metrics
+     * @param prefix Prefix of metric names
+     * @param cache Returns current cache or null
+     */
+    static void registerGauges(MetricRegistry registry, Set<String> names, String prefix, Supplier<CacheMap> cache) {
+        gauge(registry, names, prefix, "hitsL0", cache, CacheMap::getHitsL0, 0L);
+        gauge(registry, names, prefix, "hitsL1", cache, CacheMap::getHitsL1, 0L);
+        gauge(registry, names, prefix, "hitsL2", cache, CacheMap::getHitsL2, 0L);
+        gauge(registry, names, prefix, "hitsL3", cache, CacheMap::getHitsL3, 0L);
+        gauge(registry, names, prefix, "negativeHits", cache, CacheMap::getNegativeHits, 0L);
+        gauge(registry, names, prefix, "queryHits", cache, CacheMap::getQueryHits, 0L);
+        gauge(registry, names, prefix, "backendHits", cache, CacheMap::getBackendHits, 0L);
+        gauge(registry, names, prefix, "misses", cache, CacheMap::getMisses, 0L);
+        gauge(registry, names, prefix, "hitRatio", cache, CacheMap::getHitRatio, 0.0);
+        gauge(registry, names, prefix, "promotions", cache, CacheMap::getPromotions, 0L);
+        gauge(registry, names, prefix, "demotions", cache, CacheMap::getDemotions, 0L);
+        gauge(registry, names, prefix, "evictions", cache, CacheMap::getEvictions, 0L);
+        gauge(registry, names, prefix, "clears", cache, CacheMap::getClears, 0L);
+        gauge(registry, names, prefix, "expirations", cache, CacheMap::getExpirations, 0L);
+        gauge(registry, names, prefix, "sizeL1", cache, CacheMap::getSizeL1, 0);
+        gauge(registry, names, prefix, "sizeL2", cache, CacheMap::getSizeL2, 0);
+        gauge(registry, names, prefix, "sizeL3", cache, CacheMap::getSizeL3, 0);
+        gauge(registry, names, prefix, "sizeQuery", cache, CacheMap::getSizeQuery, 0);
+        gauge(registry, names, prefix, "sizeNegative", cache, CacheMap::getSizeNegative, 0);
+        gauge(registry, names, prefix, "estimatedBytes", cache, CacheMap::getEstimatedBytes, 0L);
+        gauge(registry, names, prefix, "averageMissNanos", cache, CacheMap::getAverageMissNanos, 0L);
+        gauge(registry, names, prefix, "stemTimeouts", cache, CacheMap::getStemTimeouts, 0L);
+        gauge(registry, names, prefix, "missLatency", cache, c -> latency(c.getMissLatencyHistogram()), latency(new long[CacheStats.LATENCY_BUCKETS]));
+    }
+
+    private static <T> void gauge(MetricRegistry registry, Set<String> names, String prefix, String metric,
+                                  Supplier<CacheMap> cache, Function<CacheMap, T> value, T absent) {
+        String name = MetricRegistry.name(prefix, metric);
+        registry.remove(name);
+        registry.register(name, (Gauge<T>) () -> {
+            CacheMap cacheMap = cache.get();
+            return cacheMap != null ? value.apply(cacheMap) : absent;
+        });
+        names.add(name);
+    }
+
+    // histogram keyed by upper bound of the bucket
+    static Map<String, Long> latency(long[] histogram) {
+        Map<String, Long> latency = new LinkedHashMap<>();
+        for (int i = 0; i < histogram.length - 1; i++) {
+            latency.put("lt" + (1L << i) + "us", histogram[i]);
+        }
+        latency.put("ge" + (1L << (histogram.length - 2)) + "us", histogram[histogram.length - 1]);
+        return latency;
+    }
+}
@@ -0,0 +1,160 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.CachePartition;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Stems terms missed by the cache in a bounded pool of threads, so that one pathological term (very long,
+ * deep affix recursion) does not stall the analyzing thread. The analyzing thread waits for the term at most
+ * the time budget; when it runs out, the term is emitted unstemmed and the computation goes on, its result is
+ * cached for the next lookup. Every pool thread has its own {@link Stemmer}.
+ * <p>
+ * When the queue is full, the analyzing thread stems the term itself. Idle pool threads exit, so the pool of
+ * a dropped factory does not hold any thread.
+ */
+public class StemExecutor implements Closeable {
+
+    public static final Logger LOGGER = Logger.getLogger(StemExecutor.class.getName());
+
+    // idle pool thread exits after this time
+    static final long KEEP_ALIVE_MILLIS = 60000;
+
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadLocal<Stemmer> stemmers;
+    private final long budgetMillis;
+    // terms being stemmed in the pool; repeated occurrences wait for them instead of taking another thread
+    private final ConcurrentHashMap<TermKey, CompletableFuture<CacheItem>> running = new ConcurrentHashMap<>();
+
+    /**
+     * Creates pool of daemon threads
+     * @param dictionary Dictionary of the stemmers
+     * @param threads Number of threads
+     * @param queueSize Maximum number of waiting terms
+     * @param budgetMillis How long analyzing thread waits for a term; 0 means it never waits
+     */
+    public StemExecutor(Dictionary dictionary, int threads, int queueSize, long budgetMillis) {
+        this(dictionary, threads, queueSize, budgetMillis, daemonThreads("hunspell-stem-" + POOLS.incrementAndGet() + "-"));
+    }
+
+    /**
+     * Creates pool with threads of given factory, e.g. virtual threads on JDK which has them
+     * @see #StemExecutor(Dictionary, int, int, long)
+     */
+    public StemExecutor(Dictionary dictionary, int threads, int queueSize, long budgetMillis, ThreadFactory threadFactory) {
+        if (threads < 1 || queueSize < 1 || budgetMillis < 0) {
+            throw new IllegalArgumentException("Stem executor needs positive threads and queue, non-negative budget");
+        }
+        this.stemmers = ThreadLocal.withInitial(() -> new Stemmer(dictionary));
+        this.budgetMillis = budgetMillis;
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueSize), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Computes missed item in the pool and loads it into the cache, see {@link CacheMap#load(TermKey, CachePartition, Function)};
+     * term which is already being stemmed is not submitted again, its computation is waited for within the budget.
+     * The pool serves caches of one dictionary, computed item is the same for every one of them.
+     * @param cache Cache the item is loaded into
+     * @param key Missed key; it could be a reusable probe
+     * @param partition Kind of analysis
+     * @param stemTable Precomputed stems or null
+     * @param callerLoader Loader of the analyzing thread, used when the queue is full
+     * @return Item, or null when it has not been computed within the budget
+     */
+    public CacheItem load(CacheMap cache, TermKey key, CachePartition partition, StemTable stemTable,
+                          Function<TermKey, CacheItem> callerLoader) {
+        CompletableFuture<CacheItem> future = running.get(key);
+        if (future == null) {
+            TermKey owned = key.copy();
+            CompletableFuture<CacheItem> submitted = new CompletableFuture<>();
+            future = running.putIfAbsent(owned, submitted);
+            if (future == null) {
+                future = submitted;
+                Function<TermKey, CacheItem> loader = k -> StemmerCachedWrapper.stemItem(stemmers.get(), stemTable, k, cache.getStemPool());
+                try {
+                    executor.execute(() -> {
+                        try {
+                            submitted.complete(cache.load(owned, partition, loader));
+                        } catch (Throwable t) {
+                            submitted.completeExceptionally(t);
+                        } finally {
+                            running.remove(owned, submitted);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // pool is saturated (or closed), stemming here is the back pressure; load of the same term
+                    // by a thread outside the pool is waited for within the budget too
+                    try {
+                        CacheItem item = cache.load(owned, partition, callerLoader, budgetMillis);
+                        submitted.complete(item);
+                        if (item == null) {
+                            cache.getStats().recordStemTimeout();
+                        }
+                        return item;
+                    } catch (RuntimeException | Error t) {
+                        submitted.completeExceptionally(t);
+                        throw t;
+                    } finally {
+                        running.remove(owned, submitted);
+                    }
+                }
+            }
+        }
+        try {
+            return future.get(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cache.getStats().recordStemTimeout();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops accepting terms; running computations finish and are cached
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
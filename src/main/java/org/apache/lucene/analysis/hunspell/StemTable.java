@@ -0,0 +1,241 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.InputStreamDataInput;
+import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.CharSequenceOutputs;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.IntsRefFSTEnum;
+import org.apache.lucene.util.fst.Util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Precomputed table term &rarr; stems of one dictionary, compiled offline into an FST. Stems of a term are
+ * the FST output, joined by {@link #SEPARATOR}; term known to have no stems has empty output. Table answers
+ * only for compiled terms, the live {@link Stemmer} is needed just for terms which are not in the table.
+ * <p>
+ * Table is compiled from roots of the dictionary and from an optional word list (e.g. vocabulary of the corpus,
+ * see {@link CacheWarmer#readTermList}), since all inflected forms cannot be generated from Lucene's dictionary:
+ * <pre>
+ * java org.apache.lucene.analysis.hunspell.StemTable cs_CZ.aff cs_CZ.dic cs_CZ.stems [wordlist] [ignoreCase]
+ * </pre>
+ * Table remembers content hash of the dictionary; {@link HunspellCachedStemFilterFactory} ignores table
+ * compiled for another dictionary.
+ */
+public final class StemTable {
+
+    public static final Logger LOGGER = Logger.getLogger(StemTable.class.getName());
+
+    static final String CODEC = "HunspellStemTable";
+    // version 2 dropped the unused ignore case flag; case options are part of the dictionary key
+    static final int VERSION = 2;
+    static final char SEPARATOR = '\u0000';
+
+    private static final CharSequenceOutputs OUTPUTS = CharSequenceOutputs.getSingleton();
+
+    private final String dictionaryKey;
+    private final FST<CharsRef> fst;
+
+    private StemTable(String dictionaryKey, FST<CharsRef> fst) {
+        this.dictionaryKey = dictionaryKey;
+        this.fst = fst;
+    }
+
+    /**
+     * Stems given words and the roots of the dictionary
+     * @param dictionary Dictionary
+     * @param dictionaryKey Identifier of the dictionary content and options, see {@link HunspellCachedStemFilterFactory}
+     * @param words Additional words, e.g. word list of the corpus
+     * @return Compiled table
+     * @throws IOException
+     */
+    public static StemTable compile(Dictionary dictionary, String dictionaryKey, Iterable<String> words) throws IOException {
+        Stemmer stemmer = new Stemmer(dictionary);
+        // FST needs sorted input; natural order of strings is the order of UTF-16 units
+        Map<String, CharsRef> table = new TreeMap<>();
+        IntsRefFSTEnum<IntsRef> roots = new IntsRefFSTEnum<>(dictionary.words);
+        IntsRefFSTEnum.InputOutput<IntsRef> root;
+        while ((root = roots.next()) != null) {
+            IntsRef input = root.input;
+            add(table, stemmer, new String(input.ints, input.offset, input.length));
+        }
+        for (String word : words) {
+            add(table, stemmer, word);
+        }
+        Builder<CharsRef> builder = new Builder<>(FST.INPUT_TYPE.BYTE2, OUTPUTS);
+        IntsRefBuilder scratch = new IntsRefBuilder();
+        for (Map.Entry<String, CharsRef> entry : table.entrySet()) {
+            builder.add(Util.toUTF16(entry.getKey(), scratch), entry.getValue());
+        }
+        FST<CharsRef> fst = builder.finish();
+        LOGGER.info("Compiled stem table of " + table.size() + " terms, " + (fst != null ? fst.ramBytesUsed() : 0) + " bytes");
+        return new StemTable(dictionaryKey, fst);
+    }
+
+    private static void add(Map<String, CharsRef> table, Stemmer stemmer, String word) {
+        if (word.isEmpty() || table.containsKey(word)) {
+            return;
+        }
+        char[] chars = word.toCharArray();
+        List<CharsRef> stems = stemmer.stem(chars, chars.length);
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < stems.size(); i++) {
+            if (i > 0) {
+                output.append(SEPARATOR);
+            }
+            output.append(stems.get(i));
+        }
+        table.put(word, output.length() == 0 ? OUTPUTS.getNoOutput() : new CharsRef(output.toString()));
+    }
+
+    /**
+     * Returns stems of the term as {@link Stemmer#stem(char[], int)} would, or null if the term is not in the table
+     */
+    public List<CharsRef> stem(char[] word, int length) {
+        CharsRef output = lookup(word, length);
+        if (output == null) {
+            return null;
+        }
+        if (output.length == 0) {
+            return Collections.emptyList();
+        }
+        List<CharsRef> stems = new ArrayList<>(2);
+        int start = output.offset;
+        int end = output.offset + output.length;
+        for (int i = start; i <= end; i++) {
+            if (i == end || output.chars[i] == SEPARATOR) {
+                stems.add(new CharsRef(output.chars, start, i - start));
+                start = i + 1;
+            }
+        }
+        return stems;
+    }
+
+    private CharsRef lookup(char[] word, int length) {
+        if (fst == null) {
+            return null;
+        }
+        try {
+            FST.BytesReader reader = fst.getBytesReader();
+            FST.Arc<CharsRef> arc = fst.getFirstArc(new FST.Arc<>());
+            CharsRef output = OUTPUTS.getNoOutput();
+            for (int i = 0; i < length; i++) {
+                if (fst.findTargetArc(word[i], arc, arc, reader) == null) {
+                    return null;
+                }
+                output = OUTPUTS.add(output, arc.output);
+            }
+            if (!arc.isFinal()) {
+                return null;
+            }
+            return OUTPUTS.add(output, arc.nextFinalOutput);
+        } catch (IOException e) {
+            // the FST is on heap, reading it does no I/O
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns identifier of the dictionary the table has been compiled for
+     */
+    public String getDictionaryKey() {
+        return dictionaryKey;
+    }
+
+    public long ramBytesUsed() {
+        return fst != null ? fst.ramBytesUsed() : 0;
+    }
+
+    public void write(OutputStream os) throws IOException {
+        DataOutput out = new OutputStreamDataOutput(os);
+        CodecUtil.writeHeader(out, CODEC, VERSION);
+        out.writeString(dictionaryKey);
+        out.writeByte((byte) (fst != null ? 1 : 0));
+        if (fst != null) {
+            fst.save(out);
+        }
+    }
+
+    /**
+     * Reads table written by {@link #write(OutputStream)}
+     * @param is Input; it is not closed
+     * @return
+     * @throws IOException
+     */
+    public static StemTable read(InputStream is) throws IOException {
+        DataInput in = new InputStreamDataInput(is);
+        CodecUtil.checkHeader(in, CODEC, VERSION, VERSION);
+        String dictionaryKey = in.readString();
+        FST<CharsRef> fst = in.readByte() == 1 ? new FST<>(in, OUTPUTS) : null;
+        return new StemTable(dictionaryKey, fst);
+    }
+
+    /**
+     * Offline compiler, see class description
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: StemTable <affix> <dictionary[,dictionary]> <output> [wordlist] [ignoreCase]");
+            System.exit(1);
+        }
+        Path affixFile = Paths.get(args[0]).toAbsolutePath();
+        String[] dictionaryFiles = args[1].split(",");
+        for (int i = 0; i < dictionaryFiles.length; i++) {
+            dictionaryFiles[i] = Paths.get(dictionaryFiles[i]).toAbsolutePath().toString();
+        }
+        Path output = Paths.get(args[2]);
+        boolean ignoreCase = args.length > 4 && Boolean.parseBoolean(args[4]);
+
+        FilesystemResourceLoader loader = new FilesystemResourceLoader(affixFile.getParent(), StemTable.class.getClassLoader());
+        String dictionaryKey = DictionaryHash.hash(loader, affixFile.toString(), dictionaryFiles) + (ignoreCase ? "-ignoreCase" : "");
+
+        InputStream affix = null;
+        List<InputStream> dictionaries = new ArrayList<>();
+        Dictionary dictionary;
+        try {
+            affix = loader.openResource(affixFile.toString());
+            for (String file : dictionaryFiles) {
+                dictionaries.add(loader.openResource(file));
+            }
+            dictionary = new Dictionary(new RAMDirectory(), "stemtable", affix, dictionaries, ignoreCase);
+        } finally {
+            IOUtils.closeWhileHandlingException(affix);
+            IOUtils.closeWhileHandlingException(dictionaries);
+        }
+
+        List<String> words = Collections.emptyList();
+        if (args.length > 3) {
+            try (InputStream is = new BufferedInputStream(Files.newInputStream(Paths.get(args[3])))) {
+                words = CacheWarmer.readTermList(is, 0);
+            }
+        }
+        StemTable table = compile(dictionary, dictionaryKey, words);
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(output))) {
+            table.write(os);
+        }
+    }
+}
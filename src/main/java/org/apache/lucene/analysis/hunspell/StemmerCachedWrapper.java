@@ -1,11 +1,25 @@
 package org.apache.lucene.analysis.hunspell;
 
+import org.apache.lucene.analysis.hunspell.cache.CacheConfig;
 import org.apache.lucene.analysis.hunspell.cache.CacheItem;
 import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.CachePartition;
+import org.apache.lucene.analysis.hunspell.cache.CacheSnapshot;
+import org.apache.lucene.analysis.hunspell.cache.EvictionPolicy;
+import org.apache.lucene.analysis.hunspell.cache.StemPool;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.analysis.hunspell.cache.internal.ThirdLevel;
+import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IOUtils;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -15,17 +29,86 @@ public class StemmerCachedWrapper {
 
     public static final String PROPERTY_SURVIVE_L1="surviveL1";
     public static final String PROPERTY_SURVIVE_L2="surviveL2";
+    public static final String PROPERTY_IDLE_L1="idleL1";
+    public static final String PROPERTY_IDLE_L2="idleL2";
+    public static final String PROPERTY_HIT_AGING="hitAging";
     public static final String PROPERTY_L1_L2_THRESHOLD="l1L2";
+    public static final String PROPERTY_MAX_L1="maxL1";
+    public static final String PROPERTY_MAX_L2="maxL2";
+    public static final String PROPERTY_MAX_BYTES_L1="maxBytesL1";
+    public static final String PROPERTY_MAX_BYTES_L2="maxBytesL2";
+    public static final String PROPERTY_MAX_NEGATIVE="maxNegative";
+    public static final String PROPERTY_MAX_QUERY="maxQuery";
+    public static final String PROPERTY_EVICTION_POLICY="evictionPolicy";
+    public static final String PROPERTY_OFF_HEAP_L3="offHeapL3";
+    public static final String PROPERTY_OFF_HEAP_L3_FILE="offHeapL3File";
+    public static final String PROPERTY_L0_SIZE="l0Size";
+    public static final String PROPERTY_FOLD_CASE="foldCase";
+
+    /** Default number of entries of the private front cache of each wrapper */
+    public static final int DEFAULT_L0_SIZE = 256;
+
+    // front cache hits are added to statistics of the shared cache at most after this many
+    static final int L0_PUBLISH_HITS = 1024;
+
+    // cache family; one cache of stems serves stem, uniqueStems and longestOnly lookups
+    static final String STEMS = "stems";
 
     public static final Logger LOGGER  = Logger.getLogger(StemmerCachedWrapper.class.getName());
 
-    static Map<String, CacheMap> stemsCaches = Collections.synchronizedMap(new HashMap<>());
-    static Map<String, CacheMap> uniqueStemsCaches = Collections.synchronizedMap(new HashMap<>());
+    static Map<String, CacheMap> stemsCaches = new ConcurrentHashMap<>();
 
     // internal isntance of stemmer
     private Stemmer stemmer;
     private String dictionaryUniqIdent;
 
+    // resolved shared cache; wrapper is used by one token stream at a time
+    private CacheMap stemCache;
+
+    // kind of analysis; query-time lookups pin their items
+    private CachePartition partition = CachePartition.INDEX;
+
+    // reusable lookup key pointing to the term buffer
+    private final TermKey probe = new TermKey();
+
+    // private front cache (L0), direct mapped by hash of the term; it absorbs the most frequent terms without
+    // touching shared memory. Wrapper has one user at a time, so it needs no locks; allocated by the first lookup
+    private int frontSize = Integer.getInteger(PROPERTY_L0_SIZE, DEFAULT_L0_SIZE);
+    private TermKey[] frontKeys;
+    private CacheItem[] frontItems;
+    // front cache hits not yet added to statistics of the shared cache
+    private int frontHits;
+    // front cache hits per slot not yet recorded in frequency sketch of the shared cache, and the slots having them
+    private int[] frontSlotHits;
+    private int[] frontHitSlots;
+    private int frontHitSlotCount;
+
+    // folding of the keys by the case handling of the dictionary; null if keys are the terms as given
+    private KeyFolding keyFolding;
+    private char[] foldBuffer = new char[16];
+    // reusable components of a case variant
+    private final CacheItem[] caseParts = new CacheItem[3];
+
+    // reusable state of batch lookups; keys point to the caller's term buffers or to the folded terms
+    private TermKey[] batchKeys = new TermKey[0];
+    private char[][] batchFolded = new char[0][];
+    private CacheItem[] batchResults = new CacheItem[0];
+    private final Map<TermKey, CacheItem> batchItems = new HashMap<>();
+    private final List<TermKey> batchMisses = new ArrayList<>();
+
+    // precomputed stems consulted before the stemmer; null if there is none
+    private StemTable stemTable;
+
+    // pool stemming the misses; null means they are stemmed by the calling thread
+    private StemExecutor stemExecutor;
+
+    // reusable result of single term lookups, filled by the pooled stems of the item
+    private final List<CharsRef> termStems = new ArrayList<>();
+    private final List<CharsRef> termStemsView = Collections.unmodifiableList(termStems);
+
+    // loader gets the cache owned copy of the key; stemmer could return stems backed by it, they are interned into the pool of the cache
+    private final Function<TermKey, CacheItem> stemLoader = key -> stemItem(stemmer, stemTable, key, lookupStemCache().getStemPool());
+
 
 
     public StemmerCachedWrapper(Stemmer stemmer, String dictionaryUniqIdent) {
@@ -33,6 +116,54 @@ public class StemmerCachedWrapper {
         this.dictionaryUniqIdent = dictionaryUniqIdent;
     }
 
+    /**
+     * Creates wrapper using given cache instead of the shared one
+     * @param stemmer Stemmer
+     * @param stemCache Cache of stems
+     */
+    public StemmerCachedWrapper(Stemmer stemmer, CacheMap stemCache) {
+        this.stemmer = stemmer;
+        this.stemCache = stemCache;
+    }
+
+
+    public StemTable getStemTable() {
+        return stemTable;
+    }
+
+    /**
+     * Sets precomputed stems; missed term found in the table is not stemmed, only terms unknown to the table are
+     * @param stemTable Table compiled for the same dictionary, or null
+     */
+    public void setStemTable(StemTable stemTable) {
+        this.stemTable = stemTable;
+    }
+
+    public CachePartition getPartition() {
+        return partition;
+    }
+
+    /**
+     * Sets kind of analysis using this wrapper; terms of query-time analysis are pinned in the shared cache,
+     * see {@link CachePartition}. Default is {@link CachePartition#INDEX}.
+     * @param partition
+     */
+    public void setPartition(CachePartition partition) {
+        this.partition = partition;
+    }
+
+    public StemExecutor getStemExecutor() {
+        return stemExecutor;
+    }
+
+    /**
+     * Sets pool stemming the terms missed by the cache; term not stemmed within its budget is returned
+     * without stems (the filter emits it unchanged) and it is cached when the pool finishes it
+     * @param stemExecutor Pool for the same dictionary, or null to stem in the calling thread
+     */
+    public void setStemExecutor(StemExecutor stemExecutor) {
+        this.stemExecutor = stemExecutor;
+    }
 
     // look in the cache first
     public List<CharsRef> stem(String word) {
@@ -41,96 +172,536 @@ public class StemmerCachedWrapper {
 
 
 
-    //
+    /**
+     * Returns stems of the given term. Cached term is found directly by its chars;
+     * hit allocates nothing, it returns unmodifiable list reused by the next call, holding shared stems
+     * which must not be changed. Concurrent misses of the same term are stemmed only once.
+     */
     public List<CharsRef> stem(char[] word, int length) {
-        char[] nchars = new char[length];
-        System.arraycopy(word, 0, nchars, 0, length);
-        String chachedTerm = new String(nchars);
+        CacheItem item = lookup(word, length);
+        termStems.clear();
+        for (int i = 0, count = item.getStemCount(); i < count; i++) {
+            termStems.add(item.getStem(i));
+        }
+        return termStemsView;
+    }
 
+
+    /**
+     * Returns unique stems of the given term; they are derived from the cached stems, see {@link #stem(char[], int)}
+     */
+    public List<CharsRef> uniqueStems(char[] word, int length) {
+        CacheItem item = lookup(word, length);
+        termStems.clear();
+        for (int i = 0, count = item.getUniqueStemCount(); i < count; i++) {
+            termStems.add(item.getUniqueStem(i));
+        }
+        return termStemsView;
+    }
+
+    /**
+     * Returns the longest stem of the given term (the greater one of equally long stems), or null if the term is unknown;
+     * it is precomputed in the cache, see {@link #stem(char[], int)}
+     */
+    public CharsRef longestStem(char[] word, int length) {
+        return lookup(word, length).getLongestStem();
+    }
+
+    /**
+     * Returns cached item of the given term; it is shared, see {@link #stem(char[], int)}
+     */
+    CacheItem lookup(char[] word, int length) {
+        TermKey key = key(probe, word, length, -1);
+        CacheItem item = frontGet(key);
+        if (item != null) {
+            return item;
+        }
         CacheMap analyzedStemCache = lookupStemCache();
+        publishFrontHits(analyzedStemCache);
+        int components = keyFolding != null ? keyFolding.split(key) : 0;
+        item = components > 0 ? lookupCaseVariant(analyzedStemCache, key, components) : lookupEntry(analyzedStemCache, key);
+        if (item == null) {
+            // out of time budget; not remembered by the front cache, the shared one gets the stems later
+            return CacheMap.NO_STEMS;
+        }
+        frontPut(key, item);
+        return item;
+    }
 
-        if (!analyzedStemCache.isPresent(chachedTerm)) {
-            List<CharsRef> stem = stemmer.stem(word, length);
-            cacheStem(analyzedStemCache, chachedTerm, stem);
-            return stem;
-        } else {
-            CacheItem item = analyzedStemCache.getItem(chachedTerm);
-            List<String> strings = item.getTransformedTerms();
-            List<CharsRef> charsRefs = new ArrayList<>();
-            strings.forEach(w -> {charsRefs.add(new CharsRef(w.toCharArray(),0, w.length())); });
-            return charsRefs;
+    // returns cached or computed item of one entry; null if it has not been computed within the budget
+    private CacheItem lookupEntry(CacheMap cache, TermKey key) {
+        CacheItem item = cache.getItem(key, partition);
+        return item != null ? item : load(cache, key);
+    }
+
+    // unites the entries of the case components of the term split by key folding, in the order of Stemmer.stem;
+    // null if a component has not been computed within the budget
+    private CacheItem lookupCaseVariant(CacheMap cache, TermKey key, int components) {
+        try {
+            int stemCount = 0;
+            for (int i = 0; i < components; i++) {
+                CacheItem part = lookupEntry(cache, keyFolding.component(i));
+                if (part == null) {
+                    return null;
+                }
+                caseParts[i] = part;
+                stemCount += part.getStemCount();
+            }
+            int[] stemIds = new int[stemCount];
+            int next = 0;
+            for (int i = 0; i < components; i++) {
+                for (int j = 0, count = caseParts[i].getStemCount(); j < count; j++) {
+                    stemIds[next++] = caseParts[i].getStemId(j);
+                }
+            }
+            return new CacheItem(key.copy(), stemIds, cache.getStemPool());
+        } finally {
+            Arrays.fill(caseParts, null);
         }
     }
 
-    private void cacheStem(CacheMap analyzedStemCache, String chachedTerm, List<CharsRef> stem) {
-        List<String> cloned = new ArrayList<>();
-        stem.stream().forEach(charsRef -> {
-            cloned.add(charsRef.toString());
-        });
-        CacheItem item = new CacheItem(chachedTerm, cloned);
-        analyzedStemCache.pushItem(chachedTerm, item);
+    // computes missed item, in the pool if there is one; null if the pool has not made it within the budget
+    private CacheItem load(CacheMap cache, TermKey key) {
+        StemExecutor executor = this.stemExecutor;
+        if (executor == null) {
+            return cache.load(key, partition, stemLoader);
+        }
+        return executor.load(cache, key, partition, stemTable, stemLoader);
     }
 
-    private void cacheUniqueStem( CacheMap analyzedUniqueStemCache, String chachedTerm, List<CharsRef> stem) {
-        List<String> cloned = new ArrayList<>();
-        stem.stream().forEach(charsRef -> {
-            cloned.add(charsRef.toString());
-        });
-        CacheItem item = new CacheItem(chachedTerm, cloned);
-        analyzedUniqueStemCache.pushItem(chachedTerm, item);
+    /**
+     * Stems the term by the table or by the stemmer
+     * @param stemmer Stemmer
+     * @param stemTable Precomputed stems or null
+     * @param key Cache owned key; stemmer could return stems backed by it
+     * @param stemPool Pool the stems are interned into
+     * @return
+     */
+    static CacheItem stemItem(Stemmer stemmer, StemTable stemTable, TermKey key, StemPool stemPool) {
+        if (KeyFolding.isComponent(key)) {
+            return CacheItem.copyOf(key, KeyFolding.stemComponent(stemmer, key), stemPool);
+        }
+        List<CharsRef> stems = stemTable != null ? stemTable.stem(key.getChars(), key.getLength()) : null;
+        return CacheItem.copyOf(key, stems != null ? stems : stemmer.stem(key.getChars(), key.getLength()), stemPool);
+    }
 
+    /**
+     * Returns true if keys can be folded by the dictionary, see {@link #setKeyFolding(Dictionary)}
+     */
+    public static boolean canFoldKeys(Dictionary dictionary) {
+        return KeyFolding.canFold(dictionary);
     }
 
+    public boolean isKeyFolding() {
+        return keyFolding != null;
+    }
 
-    public List<CharsRef> uniqueStems(char[] word, int length) {
-        char[] nchars = new char[length];
-        System.arraycopy(word, 0, nchars, 0, length);
-        String chachedTerm = new String(nchars);
-        CacheMap analyzedUniqueStemCache = lookupUniqueStemCache();
-
-        if (!analyzedUniqueStemCache.isPresent(chachedTerm)) {
-            List<CharsRef> stem = stemmer.uniqueStems(word, length);
-            cacheUniqueStem(analyzedUniqueStemCache, chachedTerm, stem);
-            return stem;
-        } else {
-            CacheItem item = analyzedUniqueStemCache.getItem(chachedTerm);
-            List<String> strings = item.getTransformedTerms();
-            List<CharsRef> charsRefs = new ArrayList<>();
-            strings.forEach(w -> {charsRefs.add(new CharsRef(w.toCharArray(),0, w.length())); });
-            return charsRefs;
-        }
-    }
-
-    synchronized  CacheMap lookupStemCache() {
-        CacheMap cache = stemsCaches.get(this.dictionaryUniqIdent);
-        if (cache == null) {
-            stemsCaches.put(this.dictionaryUniqIdent, configureCacheMap());
+    /**
+     * Normalizes cache keys by the case handling of the dictionary, so that e.g. "Praha", "PRAHA" and "praha" share
+     * their common stems. Keys are cleaned as the stemmer cleans its input (case folding of case insensitive dictionary,
+     * removal of ignored chars); title and upper case terms of case sensitive dictionary are split into the exact stems
+     * of the term and the stems of its lower case (and title case) form, each cached on its own, see {@link KeyFolding}.
+     * The stems are exactly those of the stemmer. Keys of dictionary with input conversion cannot be folded,
+     * see {@link #canFoldKeys(Dictionary)}.
+     * Cache could be shared with wrappers which do not fold, entries of folded keys are correct for them too;
+     * warm-up and snapshot fold their keys when the factory folds them.
+     * @param dictionary Dictionary of the stemmer, or null to use the terms as given
+     */
+    public void setKeyFolding(Dictionary dictionary) {
+        if (dictionary != null && !canFoldKeys(dictionary)) {
+            throw new IllegalArgumentException("Keys cannot be folded by dictionary with input conversion");
         }
-        return stemsCaches.get(this.dictionaryUniqIdent);
+        this.keyFolding = dictionary != null ? new KeyFolding(dictionary) : null;
+        resetFront();
     }
 
-    private CacheMap configureCacheMap() {
-        CacheMap cacheMap = new CacheMap();
-        String surviveIntervalL1 = System.getProperty(PROPERTY_SURVIVE_L1, "28800000");
-        String surviveIntervalL2 = System.getProperty(PROPERTY_SURVIVE_L2, "3600000");
-        String l1L2Threshold = System.getProperty(PROPERTY_L1_L2_THRESHOLD, "40");
-        LOGGER.info(" surviveIntervalL1 "+surviveIntervalL1);
-        LOGGER.info(" surviveIntervalL2 "+surviveIntervalL2);
-        LOGGER.info(" l1L2Threshold "+l1L2Threshold);
-
-        cacheMap.getFirstLevel().setSurviveThreshold(Integer.parseInt(l1L2Threshold));
-        cacheMap.getFirstLevel().setSurviveInterval(Long.parseLong(surviveIntervalL1));
-        cacheMap.getSecondLevel().setSurviveInterval(Long.parseLong(surviveIntervalL2));
+    // points key to the term or to its folded copy; slot is index of the batch term, -1 for single lookup
+    private TermKey key(TermKey key, char[] word, int length, int slot) {
+        if (keyFolding == null || !keyFolding.needsCleaning()) {
+            return key.set(word, 0, length);
+        }
+        CharSequence folded = keyFolding.clean(word, 0, length);
+        int foldedLength = folded.length();
+        char[] buffer = slot < 0 ? foldBuffer : batchFolded[slot];
+        if (buffer == null || buffer.length < foldedLength) {
+            buffer = new char[ArrayUtil.oversize(foldedLength, Character.BYTES)];
+            if (slot < 0) {
+                foldBuffer = buffer;
+            } else {
+                batchFolded[slot] = buffer;
+            }
+        }
+        for (int i = 0; i < foldedLength; i++) {
+            buffer[i] = folded.charAt(i);
+        }
+        return key.set(buffer, 0, foldedLength);
+    }
+
+    /**
+     * Returns number of entries of the private front cache, 0 if it is disabled
+     */
+    public int getFrontCacheSize() {
+        return frontSize;
+    }
+
+    /**
+     * Sets number of entries of the private front cache (L0) in front of the shared cache, rounded up to power of two;
+     * default is given by system property {@link #PROPERTY_L0_SIZE}. Terms served by the front cache are not counted
+     * as hits of the shared levels, so they do not take part in promotion from the first level.
+     * @param frontSize Number of entries, 0 disables the front cache
+     */
+    public void setFrontCacheSize(int frontSize) {
+        if (frontSize < 0) {
+            throw new IllegalArgumentException("Front cache size must not be negative: " + frontSize);
+        }
+        this.frontSize = frontSize;
+        resetFront();
+    }
+
+    private void resetFront() {
+        publishStatistics();
+        this.frontKeys = null;
+        this.frontItems = null;
+        this.frontSlotHits = null;
+        this.frontHitSlots = null;
+    }
+
+    private CacheItem frontGet(TermKey key) {
+        if (frontItems == null) {
+            if (frontSize == 0) {
+                return null;
+            }
+            int size = frontSize == 1 ? 1 : Integer.highestOneBit(frontSize - 1) << 1;
+            frontKeys = new TermKey[size];
+            frontItems = new CacheItem[size];
+            frontSlotHits = new int[size];
+            frontHitSlots = new int[size];
+        }
+        int slot = frontSlot(key);
+        TermKey cached = frontKeys[slot];
+        if (cached == null || !cached.equals(key)) {
+            return null;
+        }
+        if (frontSlotHits[slot]++ == 0) {
+            frontHitSlots[frontHitSlotCount++] = slot;
+        }
+        if (++frontHits == L0_PUBLISH_HITS) {
+            publishFrontHits(lookupStemCache());
+        }
+        return frontItems[slot];
+    }
+
+    private void frontPut(TermKey key, CacheItem item) {
+        if (frontItems == null) {
+            return;
+        }
+        int slot = frontSlot(key);
+        if (frontSlotHits[slot] > 0) {
+            // hits of the replaced term go to the sketch first
+            publishFrontHits(lookupStemCache());
+        }
+        // items of terms without stems are shared, they do not carry the key
+        TermKey owned = item.getKey();
+        frontKeys[slot] = owned.equals(key) ? owned : key.copy();
+        frontItems[slot] = item;
+    }
+
+    private int frontSlot(TermKey key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (frontItems.length - 1);
+    }
+
+    /**
+     * Adds hits of the front cache counted so far to statistics of the shared cache; filters do so at the end of the stream
+     */
+    public void publishStatistics() {
+        if (frontHits > 0) {
+            publishFrontHits(lookupStemCache());
+        }
+    }
+
+    private void publishFrontHits(CacheMap cache) {
+        if (frontHits > 0) {
+            cache.getStats().recordHitsL0(frontHits);
+            frontHits = 0;
+            // the shared cache has not seen these hits, admission must not take the hottest terms for cold ones
+            for (int i = 0; i < frontHitSlotCount; i++) {
+                int slot = frontHitSlots[i];
+                cache.recordHits(frontKeys[slot], frontSlotHits[slot]);
+                frontSlotHits[slot] = 0;
+            }
+            frontHitSlotCount = 0;
+        }
+    }
+
+    /**
+     * Returns stems of all given terms at once, see {@link #stem(char[][], int[], int, List)}
+     * @param words Terms to stem
+     * @return Stems of the terms in the same order
+     */
+    public List<List<CharsRef>> stemAll(List<String> words) {
+        List<List<CharsRef>> stems = new ArrayList<>(words.size());
+        stem(toChars(words), lengths(words), words.size(), stems);
+        return stems;
+    }
+
+    /**
+     * Returns unique stems of all given terms at once, see {@link #stem(char[][], int[], int, List)}
+     * @param words Terms to stem
+     * @return Unique stems of the terms in the same order
+     */
+    public List<List<CharsRef>> uniqueStemsAll(List<String> words) {
+        List<List<CharsRef>> stems = new ArrayList<>(words.size());
+        uniqueStems(toChars(words), lengths(words), words.size(), stems);
+        return stems;
+    }
+
+    /**
+     * Stems batch of terms. Cache is resolved once for the whole batch, every distinct term is looked up once
+     * and only distinct misses go to the stemmer. Returned stems are shared and unmodifiable as by {@link #stem(char[], int)}.
+     * @param words Term buffers; only first <code>lengths[i]</code> chars of <code>words[i]</code> are used
+     * @param lengths Lengths of the terms
+     * @param count Number of terms in the batch
+     * @param stems Cleared and filled with stems of the terms in the same order
+     */
+    public void stem(char[][] words, int[] lengths, int count, List<List<CharsRef>> stems) {
+        CacheItem[] items = lookupBatch(words, lengths, count);
+        stems.clear();
+        for (int i = 0; i < count; i++) {
+            stems.add(items[i].getStems());
+        }
+        Arrays.fill(items, 0, count, null);
+    }
+
+    /**
+     * Unique stems of batch of terms; see {@link #stem(char[][], int[], int, List)}
+     */
+    public void uniqueStems(char[][] words, int[] lengths, int count, List<List<CharsRef>> stems) {
+        CacheItem[] items = lookupBatch(words, lengths, count);
+        stems.clear();
+        for (int i = 0; i < count; i++) {
+            stems.add(items[i].getUniqueStems());
+        }
+        Arrays.fill(items, 0, count, null);
+    }
+
+    /**
+     * The longest stems of batch of terms, see {@link #longestStem(char[], int)} and {@link #stem(char[][], int[], int, List)}
+     * @param longest Filled with the longest stems of the terms in the same order, null for unknown terms
+     */
+    public void longestStems(char[][] words, int[] lengths, int count, CharsRef[] longest) {
+        CacheItem[] items = lookupBatch(words, lengths, count);
+        for (int i = 0; i < count; i++) {
+            longest[i] = items[i].getLongestStem();
+        }
+        Arrays.fill(items, 0, count, null);
+    }
+
+    // returns reused array of the items of the terms; caller clears it
+    private CacheItem[] lookupBatch(char[][] words, int[] lengths, int count) {
+        CacheMap cache = lookupStemCache();
+        publishFrontHits(cache);
+        if (batchKeys.length < count) {
+            TermKey[] keys = Arrays.copyOf(batchKeys, Math.max(count, batchKeys.length * 2));
+            for (int i = batchKeys.length; i < keys.length; i++) {
+                keys[i] = new TermKey();
+            }
+            this.batchKeys = keys;
+            this.batchFolded = Arrays.copyOf(batchFolded, keys.length);
+            this.batchResults = new CacheItem[keys.length];
+        }
+        try {
+            // probe distinct terms, repeated ones are counted as a single lookup
+            for (int i = 0; i < count; i++) {
+                TermKey key = key(batchKeys[i], words[i], lengths[i], i);
+                if (!batchItems.containsKey(key)) {
+                    CacheItem item = frontGet(key);
+                    int components;
+                    if (item == null && keyFolding != null && (components = keyFolding.split(key)) > 0) {
+                        // case variant is resolved at once, its components are not batched
+                        item = lookupCaseVariant(cache, key, components);
+                        if (item == null) {
+                            item = CacheMap.NO_STEMS;
+                        } else {
+                            frontPut(key, item);
+                        }
+                    } else if (item == null) {
+                        item = cache.getItem(key, partition);
+                        if (item != null) {
+                            frontPut(key, item);
+                        }
+                    }
+                    batchItems.put(key, item);
+                    if (item == null) {
+                        batchMisses.add(key);
+                    }
+                }
+            }
+            for (int i = 0, size = batchMisses.size(); i < size; i++) {
+                TermKey key = batchMisses.get(i);
+                CacheItem item = load(cache, key);
+                if (item == null) {
+                    item = CacheMap.NO_STEMS;
+                } else {
+                    frontPut(key, item);
+                }
+                batchItems.put(key, item);
+            }
+            for (int i = 0; i < count; i++) {
+                batchResults[i] = batchItems.get(batchKeys[i]);
+            }
+            return batchResults;
+        } finally {
+            // items of the batch are not held longer than necessary
+            batchItems.clear();
+            batchMisses.clear();
+        }
+    }
+
+    private static char[][] toChars(List<String> words) {
+        char[][] chars = new char[words.size()][];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = words.get(i).toCharArray();
+        }
+        return chars;
+    }
+
+    private static int[] lengths(List<String> words) {
+        int[] lengths = new int[words.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = words.get(i).length();
+        }
+        return lengths;
+    }
+
+    /**
+     * Returns shared cache of stems for given dictionary; cache is created when necessary
+     * with configuration given by system properties
+     * @param dictionaryUniqIdent Dictionary identifier
+     * @return
+     */
+    public static CacheMap getStemCache(String dictionaryUniqIdent) {
+        // no lock here; shared map creates cache exactly once per dictionary
+        return stemsCaches.computeIfAbsent(dictionaryUniqIdent, ident -> createSharedCacheMap(ident, STEMS, defaultConfig()));
+    }
+
+    /**
+     * Returns shared cache of stems configured by given configuration; existing cache is reconfigured (resized)
+     * @param dictionaryUniqIdent Dictionary identifier
+     * @param config Cache configuration
+     * @return
+     */
+    public static CacheMap getStemCache(String dictionaryUniqIdent, CacheConfig config) {
+        return configured(stemsCaches, dictionaryUniqIdent, STEMS, config);
+    }
+
+    private static CacheMap configured(Map<String, CacheMap> caches, String dictionaryUniqIdent, String family, CacheConfig config) {
+        boolean[] created = new boolean[1];
+        CacheMap cacheMap = caches.computeIfAbsent(dictionaryUniqIdent, ident -> {
+            created[0] = true;
+            return createSharedCacheMap(ident, family, config);
+        });
+        if (!created[0]) {
+            // the last configured factory wins, e.g. after reload with changed parameters
+            cacheMap.configure(config);
+        }
         return cacheMap;
     }
 
-    synchronized  CacheMap lookupUniqueStemCache() {
-        CacheMap cache = uniqueStemsCaches.get(this.dictionaryUniqIdent);
+    /**
+     * Drops cache of the dictionary; filters still using it keep working with their copy
+     * @param dictionaryUniqIdent Dictionary identifier
+     */
+    static void dropCaches(String dictionaryUniqIdent) {
+        CacheMap removed = stemsCaches.remove(dictionaryUniqIdent);
+        if (removed != null) {
+            StemCacheMetrics.unregisterMBean(dictionaryUniqIdent, STEMS);
+            IOUtils.closeWhileHandlingException(removed.getBackend());
+            CacheSnapshot.unregister(removed);
+        }
+    }
+
+    /**
+     * Returns existing cache of stems or null; nothing is created
+     * @param dictionaryUniqIdent Dictionary identifier
+     */
+    static CacheMap peekCache(String dictionaryUniqIdent) {
+        return stemsCaches.get(dictionaryUniqIdent);
+    }
+
+    CacheMap lookupStemCache() {
+        CacheMap cache = this.stemCache;
         if (cache == null) {
-            uniqueStemsCaches.put(this.dictionaryUniqIdent, configureCacheMap());
+            cache = getStemCache(this.dictionaryUniqIdent);
+            this.stemCache = cache;
         }
-        return uniqueStemsCaches.get(this.dictionaryUniqIdent);
+        return cache;
+    }
+
+    /**
+     * Returns cache configuration given by system properties; defaults of {@link CacheConfig} apply to missing ones
+     */
+    public static CacheConfig defaultConfig() {
+        CacheConfig config = new CacheConfig();
+        config.setSurviveIntervalL1(Long.parseLong(System.getProperty(PROPERTY_SURVIVE_L1, Long.toString(config.getSurviveIntervalL1()))));
+        config.setSurviveIntervalL2(Long.parseLong(System.getProperty(PROPERTY_SURVIVE_L2, Long.toString(config.getSurviveIntervalL2()))));
+        config.setIdleIntervalL1(Long.parseLong(System.getProperty(PROPERTY_IDLE_L1, Long.toString(config.getIdleIntervalL1()))));
+        config.setIdleIntervalL2(Long.parseLong(System.getProperty(PROPERTY_IDLE_L2, Long.toString(config.getIdleIntervalL2()))));
+        config.setAgingInterval(Long.parseLong(System.getProperty(PROPERTY_HIT_AGING, Long.toString(config.getAgingInterval()))));
+        config.setSurviveThreshold(Integer.parseInt(System.getProperty(PROPERTY_L1_L2_THRESHOLD, Integer.toString(config.getSurviveThreshold()))));
+        config.setMaximumSizeL1(Integer.parseInt(System.getProperty(PROPERTY_MAX_L1, Integer.toString(config.getMaximumSizeL1()))));
+        config.setMaximumSizeL2(Integer.parseInt(System.getProperty(PROPERTY_MAX_L2, Integer.toString(config.getMaximumSizeL2()))));
+        config.setMaximumBytesL1(Long.parseLong(System.getProperty(PROPERTY_MAX_BYTES_L1, Long.toString(config.getMaximumBytesL1()))));
+        config.setMaximumBytesL2(Long.parseLong(System.getProperty(PROPERTY_MAX_BYTES_L2, Long.toString(config.getMaximumBytesL2()))));
+        config.setMaximumSizeNegative(Integer.parseInt(System.getProperty(PROPERTY_MAX_NEGATIVE, Integer.toString(config.getMaximumSizeNegative()))));
+        config.setMaximumSizeQuery(Integer.parseInt(System.getProperty(PROPERTY_MAX_QUERY, Integer.toString(config.getMaximumSizeQuery()))));
+        config.setEvictionPolicy(EvictionPolicy.parse(System.getProperty(PROPERTY_EVICTION_POLICY, config.getEvictionPolicy().name())));
+        config.setOffHeapBytes(Integer.parseInt(System.getProperty(PROPERTY_OFF_HEAP_L3, Integer.toString(config.getOffHeapBytes()))));
+        config.setOffHeapFile(System.getProperty(PROPERTY_OFF_HEAP_L3_FILE));
+        return config;
+    }
 
+    private static CacheMap createSharedCacheMap(String dictionaryUniqIdent, String family, CacheConfig config) {
+        CacheMap cacheMap = createCacheMap(dictionaryUniqIdent, family, config, true);
+        StemCacheMetrics.registerMBean(cacheMap, dictionaryUniqIdent, family);
+        return cacheMap;
+    }
+
+    /**
+     * Creates cache; off-heap level is backed by file only for shared cache, the file is named by the dictionary
+     * @param dictionaryUniqIdent Dictionary identifier
+     * @param family Cache family, {@link #STEMS}
+     * @param config Cache configuration
+     * @param shared True if the cache is shared by the whole JVM
+     * @return
+     */
+    static CacheMap createCacheMap(String dictionaryUniqIdent, String family, CacheConfig config, boolean shared) {
+        LOGGER.info("Creating "+family+" cache "+dictionaryUniqIdent+" "+config);
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.configure(config);
+
+        // off-heap level is disabled by default
+        int offHeapBytes = config.getOffHeapBytes();
+        if (offHeapBytes > 0) {
+            String offHeapFile = config.getOffHeapFile();
+            try {
+                if (offHeapFile != null && shared) {
+                    try {
+                        // each dictionary and cache family gets its own file, named by the full identifier as snapshots are
+                        Path file = Paths.get(offHeapFile + "." + dictionaryUniqIdent + "." + family);
+                        cacheMap.setThirdLevel(ThirdLevel.map(file, offHeapBytes));
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Cannot map off-heap cache file, using direct memory", e);
+                        cacheMap.setThirdLevel(ThirdLevel.allocateDirect(offHeapBytes));
+                    }
+                } else {
+                    cacheMap.setThirdLevel(ThirdLevel.allocateDirect(offHeapBytes));
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Off-heap cache of " + offHeapBytes + " bytes is too small, it is disabled", e);
+            }
+        }
+        return cacheMap;
     }
 
     public List<CharsRef> applyAffix(char[] strippedWord, int length, int affix, int prefixFlag, int recursionDepth, boolean prefix, boolean circumfix, boolean caseVariant) throws IOException {
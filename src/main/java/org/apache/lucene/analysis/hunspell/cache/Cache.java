@@ -1,28 +1,78 @@
 package org.apache.lucene.analysis.hunspell.cache;
 
+import java.util.function.Function;
+
 /**
  * Implemenation of cache functionality
  */
 public interface Cache {
 
+    /**
+     * Returns true if gien term is present in the cache
+     * @param key
+     * @return
+     */
+    boolean isPresent(TermKey key);
+
+    /**
+     * Returns cached item
+     * @param key Term key; could be reusable probe
+     * @return
+     */
+    CacheItem getItem(TermKey key);
+
+    /**
+     * Push new item into cache
+     * @param key Term key; must not be changed afterwards
+     * @param item
+     */
+    void pushItem(TermKey key, CacheItem item);
+
+    /**
+     * Returns cached item or computes and caches it; every level is probed only once.
+     * Default implementation does not coalesce concurrent misses of the same term.
+     * @param key Term key; could be reusable probe
+     * @param loader Computes item for the key it gets; the key passed to loader is owned by cache and its chars start
+     *               at offset 0. When loader
+     *               returns null nothing is cached
+     * @return cached or computed item, or null
+     */
+    default CacheItem getOrCompute(TermKey key, Function<TermKey, CacheItem> loader) {
+        CacheItem item = getItem(key);
+        if (item == null) {
+            TermKey stored = key.copy();
+            item = loader.apply(stored);
+            if (item != null) {
+                pushItem(item.getKey(), item);
+            }
+        }
+        return item;
+    }
+
     /**
      * Returns true if gien term is present in the cache
      * @param term
      * @return
      */
-    boolean isPresent(String term);
+    default boolean isPresent(String term) {
+        return isPresent(new TermKey(term));
+    }
 
     /**
      * Returns cached item
      * @param term
      * @return
      */
-    CacheItem getItem(String term);
+    default CacheItem getItem(String term) {
+        return getItem(new TermKey(term));
+    }
 
     /**
      * Push new item into cache
      * @param term
      * @param item
      */
-    void pushItem(String term, CacheItem item);
+    default void pushItem(String term, CacheItem item) {
+        pushItem(new TermKey(term), item);
+    }
 }
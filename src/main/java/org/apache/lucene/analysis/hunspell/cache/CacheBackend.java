@@ -0,0 +1,20 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import java.io.Closeable;
+
+/**
+ * Second-chance store behind the levels of {@link CacheMap}, e.g. cache shared by many nodes. It is asked
+ * for terms missed by all levels before they are stemmed, and it gets every newly computed item.
+ * <p>
+ * Implementations must never block analysis for long: {@link #getItem(TermKey)} should give up quickly
+ * and return null, {@link #pushItem(TermKey, CacheItem)} should only enqueue the item. Items returned by
+ * {@link #getItem(TermKey)} must own their key and intern their stems into the pool of the cache.
+ * Backends are created by {@link CacheBackendProvider}s.
+ */
+public interface CacheBackend extends Cache, Closeable {
+
+    /**
+     * Returns name of the backend for logs and statistics
+     */
+    String getName();
+}
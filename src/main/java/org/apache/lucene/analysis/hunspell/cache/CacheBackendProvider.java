@@ -0,0 +1,43 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Service creating {@link CacheBackend}s; implementations are registered in
+ * <code>META-INF/services/org.apache.lucene.analysis.hunspell.cache.CacheBackendProvider</code>
+ * and selected by name, e.g. by the <code>backend</code> argument of the filter factory.
+ */
+public interface CacheBackendProvider {
+
+    /**
+     * Returns name the backend is selected by
+     */
+    String getName();
+
+    /**
+     * Creates backend for one cache
+     * @param cacheMap Cache the backend will be attached to; its stem pool is used for returned items
+     * @param namespace Identifier of the cached stems (dictionary content and options); caches with the same namespace
+     *                  could share stems
+     * @param args Backend specific arguments
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException when arguments are wrong
+     */
+    CacheBackend create(CacheMap cacheMap, String namespace, Map<String, String> args) throws IOException;
+
+    /**
+     * Finds provider of given name
+     * @throws IllegalArgumentException when there is no such provider
+     */
+    static CacheBackendProvider forName(String name) {
+        for (CacheBackendProvider provider : ServiceLoader.load(CacheBackendProvider.class, CacheBackendProvider.class.getClassLoader())) {
+            if (provider.getName().equals(name)) {
+                return provider;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cache backend: " + name);
+    }
+}
@@ -0,0 +1,223 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import org.apache.lucene.analysis.hunspell.cache.internal.AbstractCacheMap;
+
+/**
+ * Tuning of one {@link CacheMap}; applied by {@link CacheMap#configure(CacheConfig)}.
+ * Survive intervals are times to live of entries since they have been pushed into the level, idle intervals
+ * since their last hit; both in milliseconds, {@link AbstractCacheMap#UNBOUNDED} disables them.
+ * Maximum sizes and byte budgets may be {@link AbstractCacheMap#UNBOUNDED}; when both are set for a level,
+ * the smaller one wins. Byte budgets are converted to entries using average size of computed items.
+ */
+public class CacheConfig {
+
+    private long surviveIntervalL1 = 28800000;
+    private long surviveIntervalL2 = 3600000;
+    private long idleIntervalL1 = AbstractCacheMap.UNBOUNDED;
+    private long idleIntervalL2 = AbstractCacheMap.UNBOUNDED;
+    private long agingInterval = 600000;
+    private int surviveThreshold = 40;
+    private int maximumSizeL1 = 100000;
+    private int maximumSizeL2 = 200000;
+    private long maximumBytesL1 = AbstractCacheMap.UNBOUNDED;
+    private long maximumBytesL2 = AbstractCacheMap.UNBOUNDED;
+    private int maximumSizeNegative = 1 << 17;
+    private int maximumSizeQuery = 10000;
+    private int offHeapBytes = 0;
+    private String offHeapFile;
+    private boolean ignoreCase;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.TINY_LFU;
+
+    public CacheConfig() {
+    }
+
+    public CacheConfig(CacheConfig other) {
+        this.surviveIntervalL1 = other.surviveIntervalL1;
+        this.surviveIntervalL2 = other.surviveIntervalL2;
+        this.idleIntervalL1 = other.idleIntervalL1;
+        this.idleIntervalL2 = other.idleIntervalL2;
+        this.agingInterval = other.agingInterval;
+        this.surviveThreshold = other.surviveThreshold;
+        this.maximumSizeL1 = other.maximumSizeL1;
+        this.maximumSizeL2 = other.maximumSizeL2;
+        this.maximumBytesL1 = other.maximumBytesL1;
+        this.maximumBytesL2 = other.maximumBytesL2;
+        this.maximumSizeNegative = other.maximumSizeNegative;
+        this.maximumSizeQuery = other.maximumSizeQuery;
+        this.offHeapBytes = other.offHeapBytes;
+        this.offHeapFile = other.offHeapFile;
+        this.ignoreCase = other.ignoreCase;
+        this.evictionPolicy = other.evictionPolicy;
+    }
+
+    public long getSurviveIntervalL1() {
+        return surviveIntervalL1;
+    }
+
+    public void setSurviveIntervalL1(long surviveIntervalL1) {
+        this.surviveIntervalL1 = surviveIntervalL1;
+    }
+
+    public long getSurviveIntervalL2() {
+        return surviveIntervalL2;
+    }
+
+    public void setSurviveIntervalL2(long surviveIntervalL2) {
+        this.surviveIntervalL2 = surviveIntervalL2;
+    }
+
+    public long getIdleIntervalL1() {
+        return idleIntervalL1;
+    }
+
+    public void setIdleIntervalL1(long idleIntervalL1) {
+        this.idleIntervalL1 = idleIntervalL1;
+    }
+
+    public long getIdleIntervalL2() {
+        return idleIntervalL2;
+    }
+
+    public void setIdleIntervalL2(long idleIntervalL2) {
+        this.idleIntervalL2 = idleIntervalL2;
+    }
+
+    /**
+     * Period after which hit counters of the first level are halved, in milliseconds
+     */
+    public long getAgingInterval() {
+        return agingInterval;
+    }
+
+    public void setAgingInterval(long agingInterval) {
+        this.agingInterval = agingInterval;
+    }
+
+    /**
+     * Number of hits after which item is promoted from the first to the second level
+     */
+    public int getSurviveThreshold() {
+        return surviveThreshold;
+    }
+
+    public void setSurviveThreshold(int surviveThreshold) {
+        this.surviveThreshold = surviveThreshold;
+    }
+
+    public int getMaximumSizeL1() {
+        return maximumSizeL1;
+    }
+
+    public void setMaximumSizeL1(int maximumSizeL1) {
+        this.maximumSizeL1 = maximumSizeL1;
+    }
+
+    public int getMaximumSizeL2() {
+        return maximumSizeL2;
+    }
+
+    public void setMaximumSizeL2(int maximumSizeL2) {
+        this.maximumSizeL2 = maximumSizeL2;
+    }
+
+    public long getMaximumBytesL1() {
+        return maximumBytesL1;
+    }
+
+    public void setMaximumBytesL1(long maximumBytesL1) {
+        this.maximumBytesL1 = maximumBytesL1;
+    }
+
+    public long getMaximumBytesL2() {
+        return maximumBytesL2;
+    }
+
+    public void setMaximumBytesL2(long maximumBytesL2) {
+        this.maximumBytesL2 = maximumBytesL2;
+    }
+
+    /**
+     * Number of remembered terms without stems (8 bytes each); 0 disables the set and such terms are cached as others
+     */
+    public int getMaximumSizeNegative() {
+        return maximumSizeNegative;
+    }
+
+    public void setMaximumSizeNegative(int maximumSizeNegative) {
+        this.maximumSizeNegative = maximumSizeNegative;
+    }
+
+    /**
+     * Quota of items pinned by query-time analysis, see {@link CachePartition}; 0 disables pinning
+     */
+    public int getMaximumSizeQuery() {
+        return maximumSizeQuery;
+    }
+
+    public void setMaximumSizeQuery(int maximumSizeQuery) {
+        this.maximumSizeQuery = maximumSizeQuery;
+    }
+
+    /**
+     * Size of the off-heap third level in bytes; 0 disables it. Used only when cache is created.
+     */
+    public int getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public void setOffHeapBytes(int offHeapBytes) {
+        this.offHeapBytes = offHeapBytes;
+    }
+
+    /**
+     * File backing the off-heap level; null means direct memory. Used only when cache is created.
+     */
+    public String getOffHeapFile() {
+        return offHeapFile;
+    }
+
+    public void setOffHeapFile(String offHeapFile) {
+        this.offHeapFile = offHeapFile;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Stems differing only in case are one unique stem, as in {@code Stemmer.uniqueStems} of case insensitive dictionary
+     */
+    public void setIgnoreCase(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheConfig{" +
+                "surviveIntervalL1=" + surviveIntervalL1 +
+                ", surviveIntervalL2=" + surviveIntervalL2 +
+                ", idleIntervalL1=" + idleIntervalL1 +
+                ", idleIntervalL2=" + idleIntervalL2 +
+                ", agingInterval=" + agingInterval +
+                ", surviveThreshold=" + surviveThreshold +
+                ", maximumSizeL1=" + maximumSizeL1 +
+                ", maximumSizeL2=" + maximumSizeL2 +
+                ", maximumBytesL1=" + maximumBytesL1 +
+                ", maximumBytesL2=" + maximumBytesL2 +
+                ", maximumSizeNegative=" + maximumSizeNegative +
+                ", maximumSizeQuery=" + maximumSizeQuery +
+                ", offHeapBytes=" + offHeapBytes +
+                ", offHeapFile=" + offHeapFile +
+                ", ignoreCase=" + ignoreCase +
+                ", evictionPolicy=" + evictionPolicy +
+                '}';
+    }
+}
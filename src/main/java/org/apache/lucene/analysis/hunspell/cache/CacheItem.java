@@ -1,48 +1,300 @@
 package org.apache.lucene.analysis.hunspell.cache;
 
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
- * One cache item
+ * One cache item. Stems are kept as ids of {@link StemPool}, so items of the surface forms of one lemma
+ * share its stem; lookup returns the pooled immutable {@link CharsRef}s without copying, callers must not modify them.
+ * <p>
+ * Item holds the whole result of {@link org.apache.lucene.analysis.hunspell.Stemmer#stem(char[], int)}; unique stems
+ * and the longest stem are derived from it when the item is created, so one item serves stem, uniqueStems and longestOnly lookups.
  */
-public class CacheItem {
+public class CacheItem implements Accountable {
+
+    private static final long BASE_RAM_BYTES = RamUsageEstimator.shallowSizeOfInstance(CacheItem.class)
+            + RamUsageEstimator.shallowSizeOfInstance(TermKey.class);
+
+    private static final AtomicIntegerFieldUpdater<CacheItem> COUNTER = AtomicIntegerFieldUpdater.newUpdater(CacheItem.class, "counter");
 
-    private String term;
-    private List<String> transformedTerms;
-    private int counter = 0;
+    private final TermKey key;
+    private final int[] stemIds;
+    // the same array as stemIds when there are no duplicates
+    private final int[] uniqueIds;
+    // index of the longest stem, -1 if there is none
+    private final int longest;
+    private final StemPool pool;
+    private volatile int counter = 0;
+    // ticks of the coarse clock when the item was pushed into its level and when it was hit;
+    // plain fields, a lost update only moves expiry by a tick
+    private int writeTick;
+    private int accessTick;
 
     /**
-     * Term followed by translated terms from hunspell
+     * Term followed by translated terms from hunspell; stems are interned in {@link StemPool#DEFAULT}
      * @param term
      * @param transformedTerms
      */
     public CacheItem(String term, List<String> transformedTerms) {
-        this.term = term;
-        this.transformedTerms = transformedTerms;
+        this(new TermKey(term), toCharsRefs(transformedTerms), StemPool.DEFAULT);
     }
 
     /**
-     * Term followed by translated terms from hunspell
+     * Term followed by translated terms from hunspell; stems are interned in {@link StemPool#DEFAULT}
      * @param term
      * @param transformedTerms
      */
     public CacheItem(String term, String ... transformedTerms) {
-        this.term = term;
-        this.transformedTerms = Arrays.asList(transformedTerms);
+        this(term, Arrays.asList(transformedTerms));
+    }
+
+    /**
+     * Term key followed by stems from hunspell; stems are interned in {@link StemPool#DEFAULT}
+     * @param key Key owning its chars
+     * @param stems Stems
+     */
+    public CacheItem(TermKey key, CharsRef[] stems) {
+        this(key, stems, StemPool.DEFAULT);
+    }
+
+    /**
+     * Term key followed by stems from hunspell
+     * @param key Key owning its chars
+     * @param stems Stems; they are interned, not retained
+     * @param pool Pool of the cache
+     */
+    public CacheItem(TermKey key, CharsRef[] stems, StemPool pool) {
+        this(key, pool.intern(stems), pool);
+    }
+
+    /**
+     * Term key followed by ids of its stems
+     * @param key Key owning its chars
+     * @param stemIds Ids of the stems in the pool; array is owned by the item from now on
+     * @param pool Pool of the cache
+     */
+    public CacheItem(TermKey key, int[] stemIds, StemPool pool) {
+        this.key = key;
+        this.stemIds = stemIds;
+        this.uniqueIds = uniqueIds(stemIds, pool);
+        this.longest = longest(stemIds, pool);
+        this.pool = pool;
+    }
+
+    // equal stems have equal ids; pool of case insensitive dictionary also matches stems differing in case,
+    // as CharArraySet of Stemmer.uniqueStems does
+    private static int[] uniqueIds(int[] stemIds, StemPool pool) {
+        int[] unique = new int[stemIds.length];
+        int count = 0;
+        next:
+        for (int stemId : stemIds) {
+            for (int i = 0; i < count; i++) {
+                if (pool.isSameStem(unique[i], stemId)) {
+                    continue next;
+                }
+            }
+            unique[count++] = stemId;
+        }
+        return count == stemIds.length ? stemIds : Arrays.copyOf(unique, count);
+    }
+
+    // the first stem ordered by length and text, both descending; as sorted by longestOnly stem filter
+    private static int longest(int[] stemIds, StemPool pool) {
+        int longest = -1;
+        for (int i = 0; i < stemIds.length; i++) {
+            if (longest < 0) {
+                longest = i;
+                continue;
+            }
+            CharsRef stem = pool.get(stemIds[i]);
+            CharsRef best = pool.get(stemIds[longest]);
+            if (stem.length > best.length || (stem.length == best.length && stem.compareTo(best) > 0)) {
+                longest = i;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Creates item from stemmer output; stems are interned, so stemmer could share its buffers
+     * @param key Key owning its chars
+     * @param stems
+     * @param pool Pool of the cache
+     * @return
+     */
+    public static CacheItem copyOf(TermKey key, List<CharsRef> stems, StemPool pool) {
+        int[] stemIds = new int[stems.size()];
+        for (int i = 0; i < stemIds.length; i++) {
+            stemIds[i] = pool.intern(stems.get(i));
+        }
+        return new CacheItem(key, stemIds, pool);
+    }
+
+    private static CharsRef[] toCharsRefs(List<String> terms) {
+        CharsRef[] refs = new CharsRef[terms.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = new CharsRef(terms.get(i));
+        }
+        return refs;
+    }
+
+    public TermKey getKey() {
+        return key;
+    }
+
+    public String getTerm() {
+        return key.toString();
     }
 
     public int getCounter() {
         return this.counter;
     }
 
-    public void increment() {
-        this.counter += 1;
+    /**
+     * Atomically increments hit counter
+     * @return incremented value
+     */
+    public int increment() {
+        return COUNTER.incrementAndGet(this);
+    }
+
+    public void resetCounter() {
+        COUNTER.set(this, 0);
+    }
+
+    /**
+     * Halves hit counter for every aging period which has passed, so that counter follows recent hits
+     * @param periods Number of passed aging periods
+     */
+    public void decayCounter(int periods) {
+        int shift = Math.min(periods, 31);
+        int current;
+        do {
+            current = this.counter;
+        } while (!COUNTER.compareAndSet(this, current, current >>> shift));
+    }
+
+    public int getWriteTick() {
+        return writeTick;
+    }
+
+    /**
+     * Marks the item as pushed (and hit) in given tick
+     * @param tick
+     */
+    public void setWriteTick(int tick) {
+        this.writeTick = tick;
+        this.accessTick = tick;
+    }
+
+    public int getAccessTick() {
+        return accessTick;
+    }
+
+    /**
+     * Sets both ticks back to the given ones, e.g. when the item is shared by another level
+     * @param writeTick
+     * @param accessTick
+     */
+    public void restoreTicks(int writeTick, int accessTick) {
+        this.writeTick = writeTick;
+        this.accessTick = accessTick;
+    }
+
+    /**
+     * Marks the item as hit in given tick; shared item is written at most once per tick
+     * @param tick
+     */
+    public void touch(int tick) {
+        if (this.accessTick != tick) {
+            this.accessTick = tick;
+        }
+    }
+
+    public int getStemCount() {
+        return stemIds.length;
+    }
+
+    /**
+     * Returns shared stem; it must not be modified
+     * @param index Index of the stem, less than {@link #getStemCount()}
+     */
+    public CharsRef getStem(int index) {
+        return pool.get(stemIds[index]);
+    }
+
+    /**
+     * Returns new unmodifiable list of the shared stems; hot paths use {@link #getStem(int)} instead
+     */
+    public List<CharsRef> getStems() {
+        CharsRef[] stems = new CharsRef[stemIds.length];
+        for (int i = 0; i < stems.length; i++) {
+            stems[i] = pool.get(stemIds[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(stems));
+    }
+
+    /**
+     * Returns id of the stem in the pool of the item
+     * @param index Index of the stem, less than {@link #getStemCount()}
+     */
+    public int getStemId(int index) {
+        return stemIds[index];
+    }
+
+    public int getUniqueStemCount() {
+        return uniqueIds.length;
+    }
+
+    /**
+     * Returns shared unique stem; it must not be modified
+     * @param index Index of the stem, less than {@link #getUniqueStemCount()}
+     */
+    public CharsRef getUniqueStem(int index) {
+        return pool.get(uniqueIds[index]);
+    }
+
+    /**
+     * Returns new unmodifiable list of the shared unique stems, in order of their first occurrence
+     */
+    public List<CharsRef> getUniqueStems() {
+        CharsRef[] stems = new CharsRef[uniqueIds.length];
+        for (int i = 0; i < stems.length; i++) {
+            stems[i] = pool.get(uniqueIds[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(stems));
+    }
+
+    /**
+     * Returns the longest shared stem (the greater one of equally long stems), or null if there are no stems
+     */
+    public CharsRef getLongestStem() {
+        return longest < 0 ? null : pool.get(stemIds[longest]);
     }
 
     public List<String> getTransformedTerms() {
-        return transformedTerms;
+        List<String> terms = new ArrayList<>(stemIds.length);
+        for (int stemId : stemIds) {
+            terms.add(pool.get(stemId).toString());
+        }
+        return terms;
+    }
+
+    /**
+     * Returns estimated heap size of the item including key; stems are accounted by the pool
+     */
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_BYTES + RamUsageEstimator.sizeOf(key.getChars()) + RamUsageEstimator.sizeOf(stemIds)
+                + (uniqueIds != stemIds ? RamUsageEstimator.sizeOf(uniqueIds) : 0);
     }
 
     @Override
@@ -50,13 +302,13 @@ public class CacheItem {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         CacheItem cacheItem = (CacheItem) o;
-        return Objects.equals(term, cacheItem.term) &&
-                Objects.equals(transformedTerms, cacheItem.transformedTerms);
+        return Objects.equals(key, cacheItem.key) &&
+                getStems().equals(cacheItem.getStems());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(term, transformedTerms);
+        return Objects.hash(key, getStems());
     }
 
     @Override
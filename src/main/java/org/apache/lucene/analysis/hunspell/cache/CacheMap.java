@@ -1,22 +1,77 @@
 package org.apache.lucene.analysis.hunspell.cache;
 
 import org.apache.lucene.analysis.hunspell.cache.internal.FirstLevel;
+import org.apache.lucene.analysis.hunspell.cache.internal.FrequencySketch;
+import org.apache.lucene.analysis.hunspell.cache.internal.NegativeCache;
+import org.apache.lucene.analysis.hunspell.cache.internal.QueryLevel;
 import org.apache.lucene.analysis.hunspell.cache.internal.SecondLevel;
+import org.apache.lucene.analysis.hunspell.cache.internal.ThirdLevel;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
-
-public class CacheMap implements Cache {
+/**
+ * Two level cache shared by all threads analyzing with the same dictionary, optionally
+ * backed by off-heap third level receiving items evicted from the second one.
+ * Every lookup is recorded in frequency sketch which decides whether promoted item
+ * may replace an entry in full second level.
+ * <p>
+ * Concurrent misses of the same term are coalesced in {@link #getOrCompute(TermKey, Function)};
+ * one thread computes the item, the others wait for its result.
+ * <p>
+ * Terms without stems are remembered in a separate {@link NegativeCache} when it is configured;
+ * lookup of such term returns {@link #NO_STEMS} and it takes no place in the levels.
+ * <p>
+ * Items looked up by query-time analysis ({@link CachePartition#QUERY}) are also pinned in {@link QueryLevel},
+ * which has a quota of its own and is never pushed into by indexing, so a reindex cannot evict them.
+ * <p>
+ * Optional {@link CacheBackend} (e.g. cache shared by nodes) is asked for terms missed by all levels and
+ * the negative set; every computed item is handed over to it.
+ * <p>
+ * Hits, misses and movements between levels are counted in {@link CacheStats}.
+ */
+public class CacheMap implements Cache, StemCacheMXBean {
 
     public static final Logger LOGGER = Logger.getLogger(CacheMap.class.getName());
 
     private FirstLevel firstLevel;
     private SecondLevel secondLevel;
+    private QueryLevel queryLevel;
+    private volatile ThirdLevel thirdLevel;
+    private volatile NegativeCache negativeCache;
+    private volatile CacheBackend backend;
+    private FrequencySketch sketch;
+    private volatile EvictionPolicy evictionPolicy = EvictionPolicy.TINY_LFU;
+    private final CacheStats stats = new CacheStats();
+    private final StemPool stemPool = new StemPool();
+
+    /**
+     * Item returned for terms remembered as having no stems; it is not stored in any level
+     */
+    public static final CacheItem NO_STEMS = new CacheItem(new TermKey(""), new int[0], StemPool.DEFAULT);
+
+    // items being computed right now
+    private final ConcurrentHashMap<TermKey, CompletableFuture<CacheItem>> loading = new ConcurrentHashMap<>();
 
     public CacheMap() {
         this.firstLevel = new FirstLevel();
         this.secondLevel = new SecondLevel();
+        this.queryLevel = new QueryLevel();
+        this.sketch = new FrequencySketch();
         this.firstLevel.setEden(secondLevel);
+        this.firstLevel.setSketch(sketch);
+        this.secondLevel.setSketch(sketch);
+        this.queryLevel.setSketch(sketch);
+        this.firstLevel.setStats(stats);
+        this.secondLevel.setStats(stats);
+        this.queryLevel.setStats(stats);
+        setMaximumSizeQuery(new CacheConfig().getMaximumSizeQuery());
     }
 
     public FirstLevel getFirstLevel() {
@@ -27,28 +82,579 @@ public class CacheMap implements Cache {
         return secondLevel;
     }
 
+    public QueryLevel getQueryLevel() {
+        return queryLevel;
+    }
+
+    public ThirdLevel getThirdLevel() {
+        return thirdLevel;
+    }
+
+    /**
+     * Sets off-heap level; items evicted from the second level are demoted into it instead of being discarded
+     * @param thirdLevel Third level or null
+     */
+    public void setThirdLevel(ThirdLevel thirdLevel) {
+        if (thirdLevel != null) {
+            thirdLevel.setStats(stats);
+            thirdLevel.setStemPool(stemPool);
+        }
+        this.thirdLevel = thirdLevel;
+        this.secondLevel.setDemotion(thirdLevel);
+    }
+
+    public CacheBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Sets second-chance backend asked after all levels missed; it is not closed by the cache
+     * @param backend Backend or null
+     */
+    public void setBackend(CacheBackend backend) {
+        this.backend = backend;
+    }
+
+    public FrequencySketch getSketch() {
+        return sketch;
+    }
+
+    /**
+     * Returns pool of the stems of this cache; items put into the cache should intern their stems in it
+     */
+    public StemPool getStemPool() {
+        return stemPool;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Applies configuration of heap levels; running cache is resized, entries over the new bounds are evicted.
+     * Off-heap level is not part of this, see {@link #setThirdLevel(ThirdLevel)}.
+     * @param config
+     */
+    public void configure(CacheConfig config) {
+        this.firstLevel.setSurviveThreshold(config.getSurviveThreshold());
+        this.firstLevel.setSurviveInterval(config.getSurviveIntervalL1());
+        this.secondLevel.setSurviveInterval(config.getSurviveIntervalL2());
+        this.firstLevel.setIdleInterval(config.getIdleIntervalL1());
+        this.secondLevel.setIdleInterval(config.getIdleIntervalL2());
+        this.firstLevel.setAgingInterval(config.getAgingInterval());
+        setEvictionPolicy(config.getEvictionPolicy());
+        this.firstLevel.setMaximumBytes(config.getMaximumBytesL1());
+        this.secondLevel.setMaximumBytes(config.getMaximumBytesL2());
+        setMaximumSize(config.getMaximumSizeL1(), config.getMaximumSizeL2());
+        setMaximumSizeNegative(config.getMaximumSizeNegative());
+        setMaximumSizeQuery(config.getMaximumSizeQuery());
+        this.stemPool.setIgnoreCase(config.isIgnoreCase());
+    }
+
+    /**
+     * Runs housekeeping of all levels in the calling thread; normally it is done by
+     * {@link org.apache.lucene.analysis.hunspell.cache.internal.CacheMaintenance}
+     */
+    public void maintain() {
+        this.firstLevel.maintain();
+        this.secondLevel.maintain();
+        this.queryLevel.maintain();
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Sets policy of full bounded levels; FIFO does not maintain frequency sketch at all
+     * @param evictionPolicy
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+        FrequencySketch levelSketch = evictionPolicy == EvictionPolicy.TINY_LFU ? this.sketch : null;
+        this.firstLevel.setSketch(levelSketch);
+        this.secondLevel.setSketch(levelSketch);
+        this.queryLevel.setSketch(levelSketch);
+    }
+
+    /**
+     * Bounds both levels; {@link org.apache.lucene.analysis.hunspell.cache.internal.AbstractCacheMap#UNBOUNDED} disables the bound
+     * @param maximumL1 Maximum number of entries in the first level
+     * @param maximumL2 Maximum number of entries in the second level
+     */
+    public void setMaximumSize(int maximumL1, int maximumL2) {
+        this.firstLevel.setMaximumSize(maximumL1);
+        this.secondLevel.setMaximumSize(maximumL2);
+    }
+
     @Override
-    public boolean isPresent(String term) {
-        return this.firstLevel.isPresent(term) || this.secondLevel.isPresent(term);
+    public boolean isPresent(TermKey key) {
+        ThirdLevel thirdLevel = this.thirdLevel;
+        return this.firstLevel.isPresent(key) || this.secondLevel.isPresent(key) || this.queryLevel.isPresent(key) || (thirdLevel != null && thirdLevel.isPresent(key));
     }
 
     @Override
-    public CacheItem getItem(String term) {
+    public CacheItem getItem(TermKey key) {
+        return getItem(key, CachePartition.INDEX);
+    }
 
-        if (this.firstLevel.isPresent(term)) {
-            CacheItem item = this.firstLevel.getItem(term);
+    /**
+     * Returns cached item; item found for query-time analysis is pinned in the query level
+     * @param key Term key; could be reusable probe
+     * @param partition Kind of analysis looking the term up
+     * @return
+     */
+    public CacheItem getItem(TermKey key, CachePartition partition) {
+        if (this.evictionPolicy == EvictionPolicy.TINY_LFU) {
+            this.sketch.increment(key.hashCode());
+        }
+        boolean pinning = isPinning();
+        CacheItem item;
+        // queries look into their own level first, indexing only after the shared heap levels
+        if (pinning && partition == CachePartition.QUERY && (item = this.queryLevel.getItem(key)) != null) {
+            this.stats.recordQueryHit();
             return item;
-        } else if (this.secondLevel.isPresent(term)) {
-            CacheItem item = this.secondLevel.getItem(term);
+        }
+        item = lookup(key, pinning && partition == CachePartition.INDEX);
+        if (item != null && partition == CachePartition.QUERY) {
+            pin(item);
+        }
+        return item;
+    }
+
+    private CacheItem lookup(TermKey key, boolean queryLevel) {
+        // no isPresent check; item could be cleaned or promoted between the check and the get
+        CacheItem item = this.firstLevel.getItem(key);
+        if (item != null) {
+            this.stats.recordHit(1);
             return item;
         }
+        // promotion publishes item in L2 before removing it from L1, so it is always found
+        item = this.secondLevel.getItem(key);
+        if (item != null) {
+            this.stats.recordHit(2);
+            return item;
+        }
+        if (queryLevel && (item = this.queryLevel.getItem(key)) != null) {
+            this.stats.recordQueryHit();
+            return item;
+        }
+        ThirdLevel thirdLevel = this.thirdLevel;
+        if (thirdLevel != null) {
+            item = thirdLevel.getItem(key);
+            if (item != null) {
+                this.stats.recordHit(3);
+                // back on heap; it has to earn its promotion again
+                this.firstLevel.pushItem(item.getKey(), item);
+                return item;
+            }
+        }
+        NegativeCache negativeCache = this.negativeCache;
+        if (negativeCache != null && negativeCache.contains(key)) {
+            this.stats.recordNegativeHit();
+            return NO_STEMS;
+        }
+        CacheBackend backend = this.backend;
+        if (backend != null) {
+            item = backend.getItem(key);
+            if (item != null) {
+                this.stats.recordBackendHit();
+                if (negativeCache != null && item.getStemCount() == 0) {
+                    negativeCache.add(item.getKey());
+                    return NO_STEMS;
+                }
+                this.firstLevel.pushItem(item.getKey(), item);
+                return item;
+            }
+        }
+        this.stats.recordMiss();
+        return null;
+    }
 
+    @Override
+    public void pushItem(TermKey key, CacheItem item) {
+        this.firstLevel.pushItem(key, item);
+    }
 
-        return null;
+    @Override
+    public CacheItem getOrCompute(TermKey key, Function<TermKey, CacheItem> loader) {
+        return getOrCompute(key, CachePartition.INDEX, loader);
+    }
+
+    /**
+     * Returns cached item or computes it, see {@link #getItem(TermKey, CachePartition)} and {@link #load(TermKey, CachePartition, Function)}
+     */
+    public CacheItem getOrCompute(TermKey key, CachePartition partition, Function<TermKey, CacheItem> loader) {
+        CacheItem item = getItem(key, partition);
+        if (item != null) {
+            return item;
+        }
+        return load(key, partition, loader);
+    }
+
+    /**
+     * Computes missed item for index-time analysis, see {@link #load(TermKey, CachePartition, Function)}
+     */
+    public CacheItem load(TermKey key, Function<TermKey, CacheItem> loader) {
+        return load(key, CachePartition.INDEX, loader);
+    }
+
+    /**
+     * Computes item which has been missed by {@link #getItem(TermKey)} and pushes it into the cache;
+     * concurrent loads of the same key are coalesced. The miss is not counted again.
+     * @param key Missed key; it could be a reusable probe, it is copied when stored
+     * @param partition Kind of analysis; item computed for query-time analysis is pinned in the query level
+     * @param loader Computes item for the cache owned copy of the key
+     * @return
+     */
+    public CacheItem load(TermKey key, CachePartition partition, Function<TermKey, CacheItem> loader) {
+        return load(key, partition, loader, -1);
+    }
+
+    /**
+     * Computes missed item as {@link #load(TermKey, CachePartition, Function)} does, but waits for a concurrent load
+     * of the same key at most given time
+     * @param waitMillis Longest wait for a concurrent load; negative means no limit
+     * @return Item, or null when the concurrent load has not finished in time
+     */
+    public CacheItem load(TermKey key, CachePartition partition, Function<TermKey, CacheItem> loader, long waitMillis) {
+        CacheItem item = compute(key, loader, waitMillis);
+        if (item != null && partition == CachePartition.QUERY) {
+            pin(item);
+        }
+        return item;
+    }
+
+    private CacheItem compute(TermKey key, Function<TermKey, CacheItem> loader, long waitMillis) {
+        CacheItem item;
+        CompletableFuture<CacheItem> running = this.loading.get(key);
+        if (running != null) {
+            return await(running, waitMillis);
+        }
+        TermKey stored = key.copy();
+        CompletableFuture<CacheItem> future = new CompletableFuture<>();
+        running = this.loading.putIfAbsent(stored, future);
+        if (running != null) {
+            return await(running, waitMillis);
+        }
+        try {
+            // another thread could finish loading between our probe and registration
+            item = peekItem(stored);
+            if (item == null) {
+                long start = System.nanoTime();
+                item = loader.apply(stored);
+                long nanos = System.nanoTime() - start;
+                this.stats.recordLoad(nanos, item != null ? item.ramBytesUsed() : 0);
+                CacheBackend backend = this.backend;
+                if (item != null && backend != null) {
+                    backend.pushItem(item.getKey(), item);
+                }
+                NegativeCache negativeCache = this.negativeCache;
+                if (item != null && negativeCache != null && item.getStemCount() == 0) {
+                    // unknown word takes 8 bytes instead of an entry of the levels
+                    negativeCache.add(item.getKey());
+                    item = NO_STEMS;
+                } else if (item != null) {
+                    pushItem(item.getKey(), item);
+                }
+            }
+            future.complete(item);
+            return item;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // item is already in the cache, threads coming later find it there
+            this.loading.remove(stored, future);
+        }
+    }
+
+    /**
+     * Records hits served without asking this cache, e.g. by the front cache of a wrapper, in frequency sketch,
+     * so that admission sees the hottest terms as hot
+     * @param key Term key
+     * @param count Number of hits; counters of the sketch saturate at 15
+     */
+    public void recordHits(TermKey key, int count) {
+        if (this.evictionPolicy == EvictionPolicy.TINY_LFU) {
+            int hashCode = key.hashCode();
+            for (int i = Math.min(count, 15); i > 0; i--) {
+                this.sketch.increment(hashCode);
+            }
+        }
+    }
+
+    @Override
+    public long getHitsL0() {
+        return stats.getHits(0);
+    }
+
+    @Override
+    public long getHitsL1() {
+        return stats.getHits(1);
+    }
+
+    @Override
+    public long getHitsL2() {
+        return stats.getHits(2);
     }
 
     @Override
-    public void pushItem(String term, CacheItem item) {
-        this.firstLevel.pushItem(term, item);
+    public long getHitsL3() {
+        return stats.getHits(3);
+    }
+
+    @Override
+    public long getNegativeHits() {
+        return stats.getNegativeHits();
+    }
+
+    @Override
+    public long getQueryHits() {
+        return stats.getQueryHits();
+    }
+
+    @Override
+    public long getBackendHits() {
+        return stats.getBackendHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return stats.getMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return stats.getHitRatio();
+    }
+
+    @Override
+    public long getPromotions() {
+        return stats.getPromotions();
+    }
+
+    @Override
+    public long getDemotions() {
+        return stats.getDemotions();
+    }
+
+    @Override
+    public long getEvictions() {
+        return stats.getEvictions();
+    }
+
+    @Override
+    public long getClears() {
+        return stats.getClears();
+    }
+
+    @Override
+    public long getExpirations() {
+        return stats.getExpirations();
+    }
+
+    @Override
+    public int getSizeL1() {
+        return firstLevel.size();
+    }
+
+    @Override
+    public int getSizeL2() {
+        return secondLevel.size();
+    }
+
+    @Override
+    public int getSizeQuery() {
+        return queryLevel.size();
+    }
+
+    @Override
+    public int getSizeL3() {
+        ThirdLevel thirdLevel = this.thirdLevel;
+        return thirdLevel != null ? thirdLevel.size() : 0;
+    }
+
+    @Override
+    public int getSizeNegative() {
+        NegativeCache negativeCache = this.negativeCache;
+        return negativeCache != null ? negativeCache.size() : 0;
+    }
+
+    /**
+     * Returns estimated memory used by all levels; heap levels are estimated from average size of computed items,
+     * off-heap level reports bytes actually used
+     */
+    @Override
+    public long getEstimatedBytes() {
+        ThirdLevel thirdLevel = this.thirdLevel;
+        NegativeCache negativeCache = this.negativeCache;
+        // pinned items are counted even when they are in the other levels too, the estimate errs on the safe side
+        long heap = (long) (getSizeL1() + getSizeL2() + getSizeQuery()) * stats.getAverageItemBytes();
+        heap += negativeCache != null ? negativeCache.ramBytesUsed() : 0;
+        heap += stemPool.ramBytesUsed();
+        return heap + (thirdLevel != null ? thirdLevel.getUsedBytes() : 0);
+    }
+
+    @Override
+    public long getAverageMissNanos() {
+        long loads = stats.getLoads();
+        return loads == 0 ? 0 : stats.getLoadNanos() / loads;
+    }
+
+    @Override
+    public long getStemTimeouts() {
+        return stats.getStemTimeouts();
+    }
+
+    @Override
+    public long[] getMissLatencyHistogram() {
+        return stats.getLatencyHistogram();
+    }
+
+    @Override
+    public int getMaximumSizeL1() {
+        return firstLevel.getMaximumSize();
+    }
+
+    @Override
+    public void setMaximumSizeL1(int maximumSize) {
+        firstLevel.setMaximumSize(maximumSize);
+    }
+
+    @Override
+    public int getMaximumSizeL2() {
+        return secondLevel.getMaximumSize();
+    }
+
+    @Override
+    public void setMaximumSizeL2(int maximumSize) {
+        secondLevel.setMaximumSize(maximumSize);
+    }
+
+    @Override
+    public long getMaximumBytesL1() {
+        return firstLevel.getMaximumBytes();
+    }
+
+    @Override
+    public void setMaximumBytesL1(long maximumBytes) {
+        firstLevel.setMaximumBytes(maximumBytes);
+    }
+
+    @Override
+    public long getMaximumBytesL2() {
+        return secondLevel.getMaximumBytes();
+    }
+
+    @Override
+    public void setMaximumBytesL2(long maximumBytes) {
+        secondLevel.setMaximumBytes(maximumBytes);
+    }
+
+    @Override
+    public int getMaximumSizeNegative() {
+        NegativeCache negativeCache = this.negativeCache;
+        return negativeCache != null ? negativeCache.capacity() : 0;
+    }
+
+    @Override
+    public int getMaximumSizeQuery() {
+        return queryLevel.getMaximumSize();
+    }
+
+    /**
+     * Sets quota of items pinned by query-time analysis; 0 disables pinning and drops the pinned items
+     * @param maximumSize
+     */
+    @Override
+    public void setMaximumSizeQuery(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Query quota must not be negative: " + maximumSize);
+        }
+        this.queryLevel.setMaximumSize(maximumSize);
+    }
+
+    /**
+     * Sets capacity of the set of terms without stems; 0 disables it. Changed capacity starts with empty set.
+     * @param maximumSize
+     */
+    @Override
+    public void setMaximumSizeNegative(int maximumSize) {
+        NegativeCache negativeCache = this.negativeCache;
+        if (maximumSize <= 0) {
+            this.negativeCache = null;
+        } else if (negativeCache == null || negativeCache.capacity() != NegativeCache.tableSize(maximumSize)) {
+            this.negativeCache = new NegativeCache(maximumSize);
+        }
+    }
+
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    @Override
+    public int getSurviveThreshold() {
+        return firstLevel.getSurviveThreshold();
+    }
+
+    @Override
+    public void setSurviveThreshold(int surviveThreshold) {
+        firstLevel.setSurviveThreshold(surviveThreshold);
+    }
+
+    @Override
+    public String getEvictionPolicyName() {
+        return evictionPolicy.name();
+    }
+
+    @Override
+    public void setEvictionPolicyName(String evictionPolicy) {
+        setEvictionPolicy(EvictionPolicy.parse(evictionPolicy));
+    }
+
+    private boolean isPinning() {
+        return this.queryLevel.getMaximumSize() > 0;
+    }
+
+    // items without stems are remembered by the negative set, if any
+    private void pin(CacheItem item) {
+        if (item != NO_STEMS && isPinning() && !this.queryLevel.isPresent(item.getKey())) {
+            this.queryLevel.admit(item.getKey(), item);
+        }
+    }
+
+    private CacheItem peekItem(TermKey key) {
+        CacheItem item = this.firstLevel.peekItem(key);
+        return item != null ? item : this.secondLevel.peekItem(key);
+    }
+
+    private static CacheItem await(CompletableFuture<CacheItem> future, long waitMillis) {
+        if (waitMillis >= 0) {
+            try {
+                return future.get(waitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                throw rethrow(e.getCause());
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw rethrow(e.getCause());
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new CompletionException(cause);
     }
 }
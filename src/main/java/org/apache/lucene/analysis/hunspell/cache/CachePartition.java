@@ -0,0 +1,26 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import java.util.Locale;
+
+/**
+ * Kind of analysis using the cache. Indexing and queries share the levels of one {@link CacheMap}, terms
+ * looked up by queries are additionally pinned in a separate level with its own quota, so bulk indexing
+ * cannot evict them.
+ */
+public enum CachePartition {
+
+    /** Index-time analysis; its terms compete for the shared levels only */
+    INDEX,
+
+    /** Query-time analysis; its terms are pinned in the query level too */
+    QUERY;
+
+    /**
+     * Parses partition name, case insensitive
+     * @param name
+     * @return
+     */
+    public static CachePartition parse(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
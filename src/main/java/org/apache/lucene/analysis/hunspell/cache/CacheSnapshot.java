@@ -0,0 +1,264 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import org.apache.lucene.analysis.hunspell.cache.internal.AbstractCacheMap;
+import org.apache.lucene.util.CharsRef;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary snapshot of {@link CacheMap} used for warm start. Format:
+ * <pre>
+ *   magic (int), version (int), dictionary key (UTF),
+ *   { level (byte), key length (char), key chars, number of stems (char), { stem length (char), stem chars } },
+ *   zero (byte), number of entries (int)
+ * </pre>
+ * Second level (hot set) is written first, then the first level. Snapshot is written into a temporary file
+ * which then replaces the old one, so readers never see partially written snapshot.
+ * Dictionary key is content hash of the dictionary; snapshot of a different dictionary is never loaded.
+ * <p>
+ * Registered caches are held weakly, registration of a collected cache ends by itself.
+ */
+public class CacheSnapshot {
+
+    public static final Logger LOGGER = Logger.getLogger(CacheSnapshot.class.getName());
+
+    static final int MAGIC = 0x48435348;
+    static final int VERSION = 1;
+
+    static final byte FIRST_LEVEL = 1;
+    static final byte SECOND_LEVEL = 2;
+
+    // registered snapshots by file; written periodically and on JVM shutdown
+    private static final Map<Path, Registration> REGISTERED = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService scheduler;
+
+    private CacheSnapshot() {}
+
+    /**
+     * Writes snapshot of the cache
+     * @param cacheMap Cache
+     * @param file Target file
+     * @param dictionaryKey Dictionary content key
+     * @return number of written entries
+     * @throws IOException
+     */
+    public static int write(CacheMap cacheMap, Path file, String dictionaryKey) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(dictionaryKey);
+            // levels change while they are written, so the count is known only at the end
+            count += writeLevel(out, cacheMap.getSecondLevel(), SECOND_LEVEL);
+            count += writeLevel(out, cacheMap.getFirstLevel(), FIRST_LEVEL);
+            out.writeByte(0);
+            out.writeInt(count);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    private static int writeLevel(DataOutputStream out, AbstractCacheMap level, byte levelId) throws IOException {
+        int count = 0;
+        for (Iterator<CacheItem> it = level.items().iterator(); it.hasNext(); ) {
+            CacheItem item = it.next();
+            TermKey key = item.getKey();
+            List<CharsRef> stems = item.getStems();
+            out.writeByte(levelId);
+            writeChars(out, key.getChars(), key.getOffset(), key.getLength());
+            out.writeChar(stems.size());
+            for (CharsRef stem : stems) {
+                writeChars(out, stem.chars, stem.offset, stem.length);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static void writeChars(DataOutputStream out, char[] chars, int offset, int length) throws IOException {
+        out.writeChar(length);
+        for (int i = 0; i < length; i++) {
+            out.writeChar(chars[offset + i]);
+        }
+    }
+
+    /**
+     * Reads snapshot into the cache; items go back into the level they were written from
+     * @param file Snapshot file
+     * @param dictionaryKey Expected dictionary content key
+     * @param cacheMap Target cache
+     * @return number of loaded entries, -1 if the snapshot does not exist or belongs to another dictionary
+     * @throws IOException
+     */
+    public static int read(Path file, String dictionaryKey, CacheMap cacheMap) throws IOException {
+        return read(file, dictionaryKey, cacheMap, UnaryOperator.identity());
+    }
+
+    /**
+     * Reads snapshot into the cache under keys given by the key mapping, e.g. keys folded as lookups of the cache fold them
+     * @param keys Maps stored key to the key of the cache, or to null if the entry is not loaded
+     * @see #read(Path, String, CacheMap)
+     */
+    public static int read(Path file, String dictionaryKey, CacheMap cacheMap, UnaryOperator<TermKey> keys) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return -1;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warning("Unknown snapshot format "+file);
+                return -1;
+            }
+            String key = in.readUTF();
+            if (!key.equals(dictionaryKey)) {
+                LOGGER.info("Snapshot "+file+" belongs to another dictionary, ignoring");
+                return -1;
+            }
+            int count = 0;
+            byte levelId;
+            while ((levelId = in.readByte()) != 0) {
+                char[] keyChars = readChars(in);
+                TermKey termKey = keys.apply(new TermKey().set(keyChars, 0, keyChars.length));
+                CharsRef[] stems = new CharsRef[in.readChar()];
+                for (int i = 0; i < stems.length; i++) {
+                    char[] chars = readChars(in);
+                    stems[i] = new CharsRef(chars, 0, chars.length);
+                }
+                if (termKey == null) {
+                    continue;
+                }
+                CacheItem item = new CacheItem(termKey, stems, cacheMap.getStemPool());
+                if (levelId == SECOND_LEVEL) {
+                    cacheMap.getSecondLevel().pushItem(termKey, item);
+                } else {
+                    cacheMap.getFirstLevel().pushItem(termKey, item);
+                }
+                count++;
+            }
+            if (in.readInt() != count) {
+                LOGGER.warning("Snapshot "+file+" is damaged");
+            }
+            return count;
+        }
+    }
+
+    private static char[] readChars(DataInputStream in) throws IOException {
+        char[] chars = new char[in.readChar()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return chars;
+    }
+
+    /**
+     * Registers cache to be written periodically and on JVM shutdown; registration of another cache with the same file
+     * (e.g. cache of a reloaded core) is replaced
+     * @param cacheMap Cache
+     * @param file Snapshot file
+     * @param dictionaryKey Dictionary content key
+     * @param interval Interval in milliseconds; zero or negative means only on shutdown
+     */
+    public static synchronized void register(CacheMap cacheMap, Path file, String dictionaryKey, long interval) {
+        Registration previous = REGISTERED.get(file);
+        if (previous != null && previous.cache.get() == cacheMap && previous.interval == interval) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "hunspell-cache-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> REGISTERED.values().forEach(Registration::run), "hunspell-cache-snapshot-shutdown"));
+        }
+        Registration registration = new Registration(cacheMap, file, dictionaryKey, interval);
+        if (interval > 0) {
+            registration.future = scheduler.scheduleWithFixedDelay(registration, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        REGISTERED.put(file, registration);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Stops writing snapshots of the cache, e.g. when it is dropped; snapshot already written stays
+     * @param cacheMap Cache
+     */
+    public static synchronized void unregister(CacheMap cacheMap) {
+        for (Iterator<Registration> it = REGISTERED.values().iterator(); it.hasNext(); ) {
+            Registration registration = it.next();
+            if (registration.cache.get() == cacheMap) {
+                it.remove();
+                registration.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns cache registered with the file, or null
+     */
+    static CacheMap registered(Path file) {
+        Registration registration = REGISTERED.get(file);
+        return registration != null ? registration.cache.get() : null;
+    }
+
+    private static final class Registration implements Runnable {
+
+        final WeakReference<CacheMap> cache;
+        final Path file;
+        final String dictionaryKey;
+        final long interval;
+        volatile ScheduledFuture<?> future;
+
+        Registration(CacheMap cacheMap, Path file, String dictionaryKey, long interval) {
+            this.cache = new WeakReference<>(cacheMap);
+            this.file = file;
+            this.dictionaryKey = dictionaryKey;
+            this.interval = interval;
+        }
+
+        @Override
+        public void run() {
+            CacheMap cacheMap = cache.get();
+            if (cacheMap == null) {
+                // nobody uses the cache any more
+                REGISTERED.remove(file, this);
+                cancel();
+                return;
+            }
+            try {
+                int count = write(cacheMap, file, dictionaryKey);
+                LOGGER.fine("Written "+count+" entries into "+file);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Cannot write cache snapshot "+file, e);
+            }
+        }
+
+        void cancel() {
+            ScheduledFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of one {@link CacheMap}. Counters are striped ({@link LongAdder}), so recording from many
+ * analyzing threads does not contend; values read concurrently are not an atomic snapshot.
+ * <p>
+ * Miss latency histogram has logarithmic buckets; bucket <code>i</code> counts computations which took
+ * less than <code>2^i</code> microseconds (and at least <code>2^(i-1)</code>), the last bucket takes everything longer.
+ */
+public class CacheStats {
+
+    public static final int LATENCY_BUCKETS = 24;
+
+    private final LongAdder hitsL0 = new LongAdder();
+    private final LongAdder hitsL1 = new LongAdder();
+    private final LongAdder hitsL2 = new LongAdder();
+    private final LongAdder hitsL3 = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder queryHits = new LongAdder();
+    private final LongAdder backendHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private final LongAdder demotions = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder clears = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder stemTimeouts = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder loadedBytes = new LongAdder();
+    private final LongAdder[] latency = new LongAdder[LATENCY_BUCKETS];
+
+    public CacheStats() {
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records hit in given level
+     * @param level 1, 2 or 3
+     */
+    public void recordHit(int level) {
+        switch (level) {
+            case 1: hitsL1.increment(); break;
+            case 2: hitsL2.increment(); break;
+            case 3: hitsL3.increment(); break;
+            default: throw new IllegalArgumentException("Unknown level "+level);
+        }
+    }
+
+    /**
+     * Records hits of private front caches of the stemmers; they are counted by the stemmer and published in bulk
+     */
+    public void recordHitsL0(long count) {
+        hitsL0.add(count);
+    }
+
+    /** Term found in the set of terms without stems */
+    public void recordNegativeHit() {
+        negativeHits.increment();
+    }
+
+    /** Term found in the level pinned by queries */
+    public void recordQueryHit() {
+        queryHits.increment();
+    }
+
+    /** Term missed by all levels found in the backend */
+    public void recordBackendHit() {
+        backendHits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /** Item moved from the first to the second level */
+    public void recordPromotion() {
+        promotions.increment();
+    }
+
+    /** Item handed over to the lower (off-heap) level */
+    public void recordDemotion() {
+        demotions.increment();
+    }
+
+    /** Items removed because level was full */
+    public void recordEvictions(int count) {
+        evictions.add(count);
+    }
+
+    /** Items removed because their time to live passed */
+    public void recordExpirations(int count) {
+        expirations.add(count);
+    }
+
+    /** Whole level dropped */
+    public void recordClear() {
+        clears.increment();
+    }
+
+    /**
+     * Records computation of missing item
+     * @param nanos Time spent in stemmer
+     * @param bytes Estimated size of the computed item
+     */
+    public void recordLoad(long nanos, long bytes) {
+        loads.increment();
+        loadNanos.add(nanos);
+        loadedBytes.add(bytes);
+        latency[bucket(nanos)].increment();
+    }
+
+    /** Term emitted unstemmed because its computation ran out of time budget */
+    public void recordStemTimeout() {
+        stemTimeouts.increment();
+    }
+
+    static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    public long getHits(int level) {
+        switch (level) {
+            case 0: return hitsL0.sum();
+            case 1: return hitsL1.sum();
+            case 2: return hitsL2.sum();
+            case 3: return hitsL3.sum();
+            default: throw new IllegalArgumentException("Unknown level "+level);
+        }
+    }
+
+    /**
+     * Returns all hits, including hits of terms without stems
+     */
+    public long getHits() {
+        return hitsL0.sum() + hitsL1.sum() + hitsL2.sum() + hitsL3.sum() + queryHits.sum() + negativeHits.sum() + backendHits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getQueryHits() {
+        return queryHits.sum();
+    }
+
+    public long getBackendHits() {
+        return backendHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns ratio of hits to all lookups; 0 when there was no lookup
+     */
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public long getPromotions() {
+        return promotions.sum();
+    }
+
+    public long getDemotions() {
+        return demotions.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getClears() {
+        return clears.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getStemTimeouts() {
+        return stemTimeouts.sum();
+    }
+
+    public long getLoadNanos() {
+        return loadNanos.sum();
+    }
+
+    /**
+     * Returns average estimated size of computed item in bytes
+     */
+    public long getAverageItemBytes() {
+        long loads = this.loads.sum();
+        return loads == 0 ? 0 : loadedBytes.sum() / loads;
+    }
+
+    /**
+     * Returns counts of miss latency buckets, see class description
+     */
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[latency.length];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latency[i].sum();
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitsL0=" + hitsL0 +
+                ", hitsL1=" + hitsL1 +
+                ", hitsL2=" + hitsL2 +
+                ", hitsL3=" + hitsL3 +
+                ", negativeHits=" + negativeHits +
+                ", queryHits=" + queryHits +
+                ", backendHits=" + backendHits +
+                ", misses=" + misses +
+                ", promotions=" + promotions +
+                ", demotions=" + demotions +
+                ", evictions=" + evictions +
+                ", clears=" + clears +
+                ", expirations=" + expirations +
+                ", loads=" + loads +
+                ", stemTimeouts=" + stemTimeouts +
+                '}';
+    }
+}
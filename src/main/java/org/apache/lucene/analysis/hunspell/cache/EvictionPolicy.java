@@ -0,0 +1,28 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import java.util.Locale;
+
+/**
+ * Decides which entries stay in a full bounded level
+ */
+public enum EvictionPolicy {
+
+    /** New entry replaces the oldest one only if it is requested more often (frequency sketch) */
+    TINY_LFU,
+
+    /** Oldest entry is always replaced */
+    FIFO;
+
+    /**
+     * Parses policy name, case insensitive; <code>tinylfu</code> and <code>tiny_lfu</code> are accepted
+     * @param name
+     * @return
+     */
+    public static EvictionPolicy parse(String name) {
+        String normalized = name.trim().toUpperCase(Locale.ROOT).replace("-", "_");
+        if ("TINYLFU".equals(normalized)) {
+            return TINY_LFU;
+        }
+        return valueOf(normalized);
+    }
+}
@@ -0,0 +1,86 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+/**
+ * JMX view of one {@link CacheMap}; see {@link CacheStats} for meaning of the values.
+ * Bounds, promotion threshold and eviction policy are writable, running cache can be resized without reload.
+ */
+public interface StemCacheMXBean {
+
+    long getHitsL0();
+
+    long getHitsL1();
+
+    long getHitsL2();
+
+    long getHitsL3();
+
+    long getNegativeHits();
+
+    long getQueryHits();
+
+    long getBackendHits();
+
+    long getMisses();
+
+    double getHitRatio();
+
+    long getPromotions();
+
+    long getDemotions();
+
+    long getEvictions();
+
+    long getClears();
+
+    long getExpirations();
+
+    int getSizeL1();
+
+    int getSizeL2();
+
+    int getSizeL3();
+
+    int getSizeQuery();
+
+    int getSizeNegative();
+
+    long getEstimatedBytes();
+
+    long getAverageMissNanos();
+
+    long getStemTimeouts();
+
+    long[] getMissLatencyHistogram();
+
+    int getMaximumSizeL1();
+
+    void setMaximumSizeL1(int maximumSize);
+
+    int getMaximumSizeL2();
+
+    void setMaximumSizeL2(int maximumSize);
+
+    long getMaximumBytesL1();
+
+    void setMaximumBytesL1(long maximumBytes);
+
+    long getMaximumBytesL2();
+
+    void setMaximumBytesL2(long maximumBytes);
+
+    int getMaximumSizeNegative();
+
+    void setMaximumSizeNegative(int maximumSize);
+
+    int getMaximumSizeQuery();
+
+    void setMaximumSizeQuery(int maximumSize);
+
+    int getSurviveThreshold();
+
+    void setSurviveThreshold(int surviveThreshold);
+
+    String getEvictionPolicyName();
+
+    void setEvictionPolicyName(String evictionPolicy);
+}
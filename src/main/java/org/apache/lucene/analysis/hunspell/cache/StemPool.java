@@ -0,0 +1,132 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned stems of one cache. Every distinct stem is stored once and referred to by its id, so
+ * the many surface forms of one lemma share its chars; {@link CacheItem} keeps only ids of its stems.
+ * <p>
+ * Stems are dictionary words, their number is bounded by the dictionary, so the pool is never cleaned.
+ * Lookup by id does not lock; new stems are added under the lock of the pool.
+ */
+public class StemPool implements Accountable {
+
+    // stem, its id in the map and the slot of the array
+    private static final long STEM_RAM_BYTES = RamUsageEstimator.shallowSizeOfInstance(CharsRef.class)
+            + RamUsageEstimator.shallowSizeOfInstance(Integer.class)
+            + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_REF
+            + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+    /** Pool of items created without explicit pool, e.g. in tools and tests */
+    public static final StemPool DEFAULT = new StemPool();
+
+    private final ConcurrentHashMap<CharsRef, Integer> ids = new ConcurrentHashMap<>();
+    // written under the lock, array is replaced when it grows; published before the id
+    private volatile CharsRef[] stems = new CharsRef[64];
+    private int size;
+    private volatile long ramBytesUsed;
+    private volatile boolean ignoreCase;
+
+    /**
+     * Returns id of the stem; stem seen for the first time is copied into the pool
+     * @param stem Stem; it is not retained
+     * @return
+     */
+    public int intern(CharsRef stem) {
+        Integer id = ids.get(stem);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(stem);
+            if (id != null) {
+                return id;
+            }
+            CharsRef copy = CharsRef.deepCopyOf(stem);
+            int next = size;
+            CharsRef[] array = this.stems;
+            if (next == array.length) {
+                array = Arrays.copyOf(array, next * 2);
+            }
+            array[next] = copy;
+            this.stems = array;
+            this.size = next + 1;
+            this.ramBytesUsed += STEM_RAM_BYTES + RamUsageEstimator.sizeOf(copy.chars);
+            ids.put(copy, next);
+            return next;
+        }
+    }
+
+    /**
+     * Interns all stems
+     * @param stems Stems; they are not retained
+     * @return Ids of the stems in the same order
+     */
+    public int[] intern(CharsRef[] stems) {
+        int[] stemIds = new int[stems.length];
+        for (int i = 0; i < stems.length; i++) {
+            stemIds[i] = intern(stems[i]);
+        }
+        return stemIds;
+    }
+
+    /**
+     * Returns shared stem of given id; it must not be modified
+     */
+    public CharsRef get(int id) {
+        return stems[id];
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    /**
+     * Makes stems differing only in case one unique stem, as in case insensitive dictionary; set before items are created
+     */
+    public void setIgnoreCase(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Returns true if the ids are one unique stem: the same stem or, when the pool ignores case,
+     * stems equal after lower casing; compared as {@link org.apache.lucene.analysis.CharArraySet} does
+     */
+    public boolean isSameStem(int id, int otherId) {
+        if (id == otherId) {
+            return true;
+        }
+        if (!ignoreCase) {
+            return false;
+        }
+        CharsRef stem = get(id);
+        CharsRef other = get(otherId);
+        if (stem.length != other.length) {
+            return false;
+        }
+        int end = stem.offset + stem.length;
+        int otherEnd = other.offset + other.length;
+        for (int i = 0; i < stem.length; ) {
+            int codePoint = Character.codePointAt(stem.chars, stem.offset + i, end);
+            if (Character.toLowerCase(codePoint) != Character.toLowerCase(Character.codePointAt(other.chars, other.offset + i, otherEnd))) {
+                return false;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return true;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+}
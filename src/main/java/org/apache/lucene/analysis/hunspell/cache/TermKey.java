@@ -0,0 +1,107 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+/**
+ * Cache key over slice of chars. Hash code is the same as {@link String#hashCode()} of the slice.
+ * <p>
+ * Keys stored in the cache own their chars and never change. Token streams use one reusable probe key
+ * pointing directly to the term buffer ({@link #set(char[], int, int)}), so lookup of an already cached term
+ * does not allocate anything. Probe must never be stored in the cache, use {@link #copy()} instead.
+ */
+public final class TermKey {
+
+    private char[] chars;
+    private int offset;
+    private int length;
+    private int hash;
+
+    /**
+     * Creates empty probe key
+     */
+    public TermKey() {
+        this.chars = new char[0];
+    }
+
+    /**
+     * Creates key owning chars of given term
+     * @param term
+     */
+    public TermKey(String term) {
+        this.chars = term.toCharArray();
+        this.offset = 0;
+        this.length = this.chars.length;
+        this.hash = term.hashCode();
+    }
+
+    /**
+     * Creates key owning copy of given chars
+     * @param chars
+     * @param offset
+     * @param length
+     * @return
+     */
+    public static TermKey copyOf(char[] chars, int offset, int length) {
+        char[] copied = new char[length];
+        System.arraycopy(chars, offset, copied, 0, length);
+        return new TermKey().set(copied, 0, length);
+    }
+
+    /**
+     * Points this key to given chars; no copy is made
+     * @param chars
+     * @param offset
+     * @param length
+     * @return this key
+     */
+    public TermKey set(char[] chars, int offset, int length) {
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+        int h = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        this.hash = h;
+        return this;
+    }
+
+    /**
+     * Returns key owning its own copy of chars
+     */
+    public TermKey copy() {
+        return copyOf(this.chars, this.offset, this.length);
+    }
+
+    public char[] getChars() {
+        return chars;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TermKey other = (TermKey) o;
+        if (this.hash != other.hash || this.length != other.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (this.chars[this.offset + i] != other.chars[other.offset + i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, offset, length);
+    }
+}
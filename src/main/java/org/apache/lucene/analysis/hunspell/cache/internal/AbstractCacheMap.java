@@ -2,15 +2,74 @@ package org.apache.lucene.analysis.hunspell.cache.internal;
 
 import org.apache.lucene.analysis.hunspell.cache.Cache;
 import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.CacheStats;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Logger;
 
+/**
+ * Base for cache levels. Levels are shared by all indexing and query threads, so implementations
+ * must keep their entries in concurrent maps; cleaning swaps the map instead of locking readers.
+ * <p>
+ * Level can be bounded by maximum number of entries and by estimated bytes; byte budget is converted to entries
+ * using average size of items computed so far. Bounded level remembers insertion order and
+ * evicts the oldest entries; when frequency sketch is present, {@link #admit(TermKey, CacheItem)} lets the
+ * new entry in only if it is requested more often than the entry it would replace (TinyLFU).
+ * <p>
+ * Every entry expires on its own: survive interval is the time to live since the entry was pushed into the level,
+ * idle interval is the time to live since its last hit (both in ticks of {@link CacheMaintenance#currentTick()}).
+ * Expired entry is not returned any more; it is removed by incremental sweep which visits a batch of entries
+ * in every maintenance run.
+ * <p>
+ * Housekeeping is done by {@link CacheMaintenance}, never by analyzing threads; a level grown over its bound is
+ * trimmed in the maintenance thread. Only a level which reaches twice its bound (maintenance does not keep up)
+ * is trimmed by the pushing thread itself.
+ */
 public abstract  class AbstractCacheMap implements Cache {
 
     public static final Logger LOGGER = Logger.getLogger(AbstractCacheMap.class.getName());
 
-    long lastCleaningTimestamp;
+    public static final int UNBOUNDED = -1;
+
+    // entries visited by one maintenance run of the expiry sweep
+    static final int SWEEP_BATCH = 10000;
+
+    // lower estimate of item size, used only for sizing frequency sketch of byte bounded level
+    static final int MIN_ITEM_BYTES = 128;
+
+    volatile long lastCleaningTimestamp;
+
+    // time to live since push and since last hit, in milliseconds and in ticks
+    volatile long surviveInterval = UNBOUNDED;
+    volatile int surviveTicks = UNBOUNDED;
+    volatile long idleInterval = UNBOUNDED;
+    volatile int idleTicks = UNBOUNDED;
+
+    volatile int maximumSize = UNBOUNDED;
+    volatile long maximumBytes = UNBOUNDED;
+    // insertion order, maintained only for bounded level; may contain stale (removed or replaced) items
+    volatile Queue<CacheItem> order = new ConcurrentLinkedQueue<>();
+
+    volatile FrequencySketch sketch;
+
+    // level receiving evicted items; null means evicted items are discarded
+    volatile Cache demotion;
+
+    // shared with other levels of the same cache map
+    volatile CacheStats stats = new CacheStats();
+
+    private volatile boolean registered;
+    private final AtomicBoolean maintenanceRequested = new AtomicBoolean();
+
+    // position of the expiry sweep, touched only under the lock of maintain()
+    private Iterator<CacheItem> sweep;
+    private Map<TermKey, CacheItem> sweptMap;
 
     public AbstractCacheMap() {
         lastCleaningTimestamp = System.currentTimeMillis();
@@ -22,25 +81,307 @@ public abstract  class AbstractCacheMap implements Cache {
 
     public abstract void cleanCache();
 
-    public abstract  long getSurviveInterval();
+    /**
+     * Returns time to live of entries since they have been pushed, in milliseconds; {@link #UNBOUNDED} means forever
+     */
+    public long getSurviveInterval() {
+        return surviveInterval;
+    }
+
+    public void setSurviveInterval(long surviveInterval) {
+        this.surviveInterval = surviveInterval;
+        this.surviveTicks = surviveInterval == UNBOUNDED ? UNBOUNDED : CacheMaintenance.toTicks(surviveInterval);
+    }
+
+    /**
+     * Returns time to live of entries since their last hit, in milliseconds; {@link #UNBOUNDED} means forever
+     */
+    public long getIdleInterval() {
+        return idleInterval;
+    }
+
+    public void setIdleInterval(long idleInterval) {
+        this.idleInterval = idleInterval;
+        this.idleTicks = idleInterval == UNBOUNDED ? UNBOUNDED : CacheMaintenance.toTicks(idleInterval);
+    }
+
+    /**
+     * Returns true if the item has outlived survive or idle interval of this level
+     * @param item
+     * @param now Current tick
+     */
+    public boolean isExpired(CacheItem item, int now) {
+        int survive = surviveTicks;
+        if (survive != UNBOUNDED && now - item.getWriteTick() >= survive) {
+            return true;
+        }
+        int idle = idleTicks;
+        return idle != UNBOUNDED && now - item.getAccessTick() >= idle;
+    }
+
+    protected abstract Map<TermKey, CacheItem> getMap();
+
+    public int size() {
+        return getMap().size();
+    }
+
+    /**
+     * Returns weakly consistent view of the cached items
+     */
+    public Collection<CacheItem> items() {
+        return getMap().values();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets maximum number of entries; {@link #UNBOUNDED} disables eviction.
+     * Level can be resized while it is used, entries over the new bound are evicted immediately.
+     * @param maximumSize
+     */
+    public synchronized void setMaximumSize(int maximumSize) {
+        startOrderIfNecessary(maximumSize != UNBOUNDED);
+        this.maximumSize = maximumSize;
+        if (sketch != null && maximumSize != UNBOUNDED) {
+            sketch.ensureCapacity(maximumSize);
+        }
+        evictIfNecessary();
+    }
+
+    public long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Sets estimated memory budget in bytes; {@link #UNBOUNDED} disables it
+     * @param maximumBytes
+     */
+    public synchronized void setMaximumBytes(long maximumBytes) {
+        startOrderIfNecessary(maximumBytes != UNBOUNDED);
+        this.maximumBytes = maximumBytes;
+        if (sketch != null && maximumBytes != UNBOUNDED) {
+            sketch.ensureCapacity(maximumBytes / MIN_ITEM_BYTES);
+        }
+        evictIfNecessary();
+    }
+
+    // order of entries is remembered only by bounded level; level becoming bounded seeds it from its entries
+    private void startOrderIfNecessary(boolean bounded) {
+        if (!isBounded() && bounded) {
+            this.order = new ConcurrentLinkedQueue<>(getMap().values());
+        }
+    }
+
+    public boolean isBounded() {
+        return maximumSize != UNBOUNDED || maximumBytes != UNBOUNDED;
+    }
+
+    /**
+     * Returns maximum number of entries derived from both bounds, or {@link #UNBOUNDED}
+     */
+    public int getEffectiveMaximumSize() {
+        int max = maximumSize;
+        long maxBytes = maximumBytes;
+        long average = stats.getAverageItemBytes();
+        if (maxBytes == UNBOUNDED || average <= 0) {
+            return max;
+        }
+        int byBytes = (int) Math.min(Integer.MAX_VALUE, maxBytes / average);
+        return max == UNBOUNDED ? byBytes : Math.min(max, byBytes);
+    }
+
+    public FrequencySketch getSketch() {
+        return sketch;
+    }
+
+    public void setSketch(FrequencySketch sketch) {
+        this.sketch = sketch;
+        if (sketch != null && maximumSize != UNBOUNDED) {
+            sketch.ensureCapacity(maximumSize);
+        }
+        if (sketch != null && maximumBytes != UNBOUNDED) {
+            sketch.ensureCapacity(maximumBytes / MIN_ITEM_BYTES);
+        }
+    }
+
+    /**
+     * Returns item without counting the hit; expired item waiting for the sweep is not returned
+     * @param key
+     * @return
+     */
+    public CacheItem peekItem(TermKey key) {
+        CacheItem item = getMap().get(key);
+        return item == null || isExpired(item, CacheMaintenance.currentTick()) ? null : item;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    public void setStats(CacheStats stats) {
+        this.stats = stats;
+    }
 
-    public abstract void setSurviveInterval(long si);
+    public Cache getDemotion() {
+        return demotion;
+    }
 
-    protected abstract Map<String, CacheItem> getMap();
+    /**
+     * Sets level which receives items evicted from this one
+     * @param demotion
+     */
+    public void setDemotion(Cache demotion) {
+        this.demotion = demotion;
+    }
 
     @Override
-    public void pushItem(String term, CacheItem item) {
-        this.triggerCleanCacheIfNecessary();
-        getMap().put(term, item);
+    public void pushItem(TermKey key, CacheItem item) {
+        if (!registered) {
+            registered = true;
+            CacheMaintenance.register(this);
+        }
+        item.setWriteTick(CacheMaintenance.currentTick());
+        getMap().put(key, item);
+        if (isBounded()) {
+            order.offer(item);
+            int max = getEffectiveMaximumSize();
+            if (max != UNBOUNDED) {
+                int size = size();
+                if (size > 2L * max) {
+                    evictIfNecessary();
+                } else if (size > max && maintenanceRequested.compareAndSet(false, true)) {
+                    CacheMaintenance.request(this);
+                }
+            }
+        }
     }
 
-    public void triggerCleanCacheIfNecessary() {
-        if (getSurviveInterval() != -1) {
-            long diff = System.currentTimeMillis() - getLastCleaningTimestamp();
-            if (diff >= getSurviveInterval()) {
-                LOGGER.fine("Diff  "+diff+" is more then predefined interval "+getSurviveInterval());
-                this.cleanCache();
+    /**
+     * Does housekeeping of the level: evicts entries over the bound and continues expiry sweep.
+     * Called by {@link CacheMaintenance}; could be called directly too.
+     */
+    public synchronized void maintain() {
+        maintenanceRequested.set(false);
+        FrequencySketch sketch = this.sketch;
+        if (sketch != null) {
+            sketch.maintain();
+        }
+        evictIfNecessary();
+        expireEntries(SWEEP_BATCH);
+    }
+
+    // visits at most given number of entries and removes the expired ones; the next call continues
+    private void expireEntries(int batch) {
+        if (surviveTicks == UNBOUNDED && idleTicks == UNBOUNDED) {
+            this.sweep = null;
+            return;
+        }
+        Map<TermKey, CacheItem> map = getMap();
+        Iterator<CacheItem> sweep = this.sweep;
+        if (sweep == null || this.sweptMap != map) {
+            // start over, also when the map has been swapped by cleaning
+            sweep = map.values().iterator();
+            this.sweptMap = map;
+        }
+        int now = CacheMaintenance.currentTick();
+        int expired = 0;
+        for (int i = 0; i < batch && sweep.hasNext(); i++) {
+            CacheItem item = sweep.next();
+            if (isExpired(item, now) && map.remove(item.getKey(), item)) {
+                expired++;
+                demote(item);
             }
         }
+        stats.recordExpirations(expired);
+        if (sweep.hasNext()) {
+            this.sweep = sweep;
+        } else {
+            this.sweep = null;
+            // drop references of removed items from the order
+            order.removeIf(item -> map.get(item.getKey()) != item);
+        }
+    }
+
+    /**
+     * Pushes item if level has room for it or if it is more frequent than the eviction candidate
+     * @param key
+     * @param item
+     * @return true if item has been admitted
+     */
+    public boolean admit(TermKey key, CacheItem item) {
+        int max = getEffectiveMaximumSize();
+        FrequencySketch sketch = this.sketch;
+        if (max == UNBOUNDED || sketch == null || size() < max || getMap().containsKey(key)) {
+            pushItem(key, item);
+            return true;
+        }
+        CacheItem victim = pollVictim();
+        if (victim == null) {
+            pushItem(key, item);
+            return true;
+        }
+        if (sketch.frequency(key.hashCode()) > sketch.frequency(victim.getKey().hashCode())) {
+            if (getMap().remove(victim.getKey(), victim)) {
+                stats.recordEvictions(1);
+                demote(victim);
+            }
+            pushItem(key, item);
+            return true;
+        } else {
+            // victim stays, it goes to the end of the queue as in clock algorithm
+            order.offer(victim);
+            return false;
+        }
+    }
+
+    /**
+     * Removes the oldest entries until level fits into its maximum size
+     */
+    public void evictIfNecessary() {
+        int max = getEffectiveMaximumSize();
+        while (max != UNBOUNDED && size() > max) {
+            CacheItem victim = pollVictim();
+            if (victim == null) {
+                break;
+            }
+            if (getMap().remove(victim.getKey(), victim)) {
+                stats.recordEvictions(1);
+                demote(victim);
+            }
+        }
+    }
+
+    /**
+     * Hands item removed from this level over to the demotion level
+     * @param item
+     */
+    protected void demote(CacheItem item) {
+        Cache demotion = this.demotion;
+        if (demotion != null) {
+            stats.recordDemotion();
+            demotion.pushItem(item.getKey(), item);
+        }
+    }
+
+    // oldest item which is still present in the map
+    private CacheItem pollVictim() {
+        Queue<CacheItem> queue = this.order;
+        Map<TermKey, CacheItem> map = getMap();
+        CacheItem victim;
+        while ((victim = queue.poll()) != null) {
+            if (map.get(victim.getKey()) == victim) {
+                return victim;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops insertion order; called by levels when cleaning the map
+     */
+    protected void resetOrder() {
+        this.order = new ConcurrentLinkedQueue<>();
     }
 }
@@ -0,0 +1,93 @@
+package org.apache.lucene.analysis.hunspell.cache.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Housekeeping of all cache levels in the JVM, done by one daemon thread: expiry sweeps, eviction of entries
+ * over the bound and demotion. Analyzing threads never wait for it; they only read the coarse clock
+ * ({@link #currentTick()}) and ask for maintenance when a level grows over its bound.
+ * <p>
+ * Levels are held weakly, so caches which are no longer used are simply collected.
+ */
+public final class CacheMaintenance {
+
+    public static final Logger LOGGER = Logger.getLogger(CacheMaintenance.class.getName());
+
+    /** Resolution of the coarse clock and period of maintenance runs */
+    public static final long TICK_MILLIS = 100;
+
+    private static final long EPOCH = System.currentTimeMillis();
+
+    private static volatile int tick;
+
+    private static final Set<AbstractCacheMap> LEVELS = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hunspell-cache-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        EXECUTOR.scheduleWithFixedDelay(CacheMaintenance::run, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private CacheMaintenance() {}
+
+    /**
+     * Returns current tick of the coarse clock; ticks are {@link #TICK_MILLIS} long and advance
+     * only in the maintenance thread, so reading them costs one volatile read
+     */
+    public static int currentTick() {
+        return tick;
+    }
+
+    /**
+     * Converts milliseconds to (rounded up) number of ticks
+     */
+    public static int toTicks(long millis) {
+        return (int) Math.min(Integer.MAX_VALUE, (millis + TICK_MILLIS - 1) / TICK_MILLIS);
+    }
+
+    static void register(AbstractCacheMap level) {
+        synchronized (LEVELS) {
+            LEVELS.add(level);
+        }
+    }
+
+    /**
+     * Runs maintenance of the level in the maintenance thread as soon as possible
+     */
+    static void request(AbstractCacheMap level) {
+        EXECUTOR.execute(() -> maintain(level));
+    }
+
+    private static void run() {
+        tick = (int) ((System.currentTimeMillis() - EPOCH) / TICK_MILLIS);
+        List<AbstractCacheMap> levels;
+        synchronized (LEVELS) {
+            levels = new ArrayList<>(LEVELS);
+        }
+        for (AbstractCacheMap level : levels) {
+            maintain(level);
+        }
+    }
+
+    private static void maintain(AbstractCacheMap level) {
+        try {
+            level.maintain();
+        } catch (RuntimeException e) {
+            // the next run tries again; the thread must survive
+            LOGGER.log(Level.WARNING, "Cache maintenance failed", e);
+        }
+    }
+}
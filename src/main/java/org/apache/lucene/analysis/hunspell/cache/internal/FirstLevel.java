@@ -1,9 +1,10 @@
 package org.apache.lucene.analysis.hunspell.cache.internal;
 
 import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 public class FirstLevel extends AbstractCacheMap {
@@ -12,19 +13,22 @@ public class FirstLevel extends AbstractCacheMap {
 
     public final long DEFAULT_SURVIVAL_INTERVAL = 1000 * 3600;
 
-    long surviveInterval = DEFAULT_SURVIVAL_INTERVAL;
+    volatile int surviveThreshold = 25;
 
-    int surviveThreshold = 25;
+    // counters are halved every aging period, in milliseconds and in ticks
+    volatile long agingInterval = UNBOUNDED;
+    volatile int agingTicks = UNBOUNDED;
 
-    Map<String, CacheItem> map =  new HashMap<>();
-    SecondLevel eden = null;
+    volatile Map<TermKey, CacheItem> map =  new ConcurrentHashMap<>();
+    volatile SecondLevel eden = null;
 
     public FirstLevel() {
         super();
+        setSurviveInterval(DEFAULT_SURVIVAL_INTERVAL);
     }
 
-    public boolean isPresent(String term) {
-        return map.containsKey(term);
+    public boolean isPresent(TermKey key) {
+        return map.containsKey(key);
     }
 
     public SecondLevel getEden() {
@@ -36,17 +40,30 @@ public class FirstLevel extends AbstractCacheMap {
     }
 
     @Override
-    protected Map<String, CacheItem> getMap() {
+    protected Map<TermKey, CacheItem> getMap() {
         return this.map;
     }
 
 
-    void moveItemAsNecessary(String term, CacheItem item) {
-        if (item.getCounter() >= surviveThreshold) {
-            if (getEden() != null) {
-                LOGGER.fine("Moving item to eden '"+term+"'");
-                this.map.remove(term);
-                getEden().pushItem(term, item);
+    /**
+     * Promotes item into second level. Item is first published in the second level and only then removed
+     * from this one, so concurrent readers never miss it; conditional remove guarantees that
+     * an item which has been replaced in the meantime is not removed.
+     * When full second level rejects the item, its counter starts again.
+     */
+    void moveItemAsNecessary(CacheItem item, int counter) {
+        if (counter >= surviveThreshold) {
+            SecondLevel eden = getEden();
+            if (eden != null) {
+                // lookup key could be a reusable probe, only item's own key may be stored
+                TermKey key = item.getKey();
+                if (eden.admit(key, item)) {
+                    if (this.map.remove(key, item)) {
+                        stats.recordPromotion();
+                    }
+                } else {
+                    item.resetCounter();
+                }
             }
         }
     }
@@ -54,21 +71,12 @@ public class FirstLevel extends AbstractCacheMap {
     @Override
     public void cleanCache() {
         LOGGER.fine("Cleaning cache L1");
-        this.map.clear();
-        this.map = new HashMap<>();
+        // readers still holding the old map simply finish on it
+        this.map = new ConcurrentHashMap<>();
+        this.resetOrder();
         this.lastCleaningTimestamp = System.currentTimeMillis();
     }
 
-    @Override
-    public long getSurviveInterval() {
-        return this.surviveInterval;
-    }
-
-    @Override
-    public void setSurviveInterval(long si) {
-        this.surviveInterval = si;
-    }
-
     public int getSurviveThreshold() {
         return surviveThreshold;
     }
@@ -77,13 +85,41 @@ public class FirstLevel extends AbstractCacheMap {
         this.surviveThreshold = surviveThreshold;
     }
 
-    public CacheItem getItem(String term) {
-        CacheItem item = this.map.get(term);
-        if (item != null) {
-            item.increment();
-            this.moveItemAsNecessary(term, item);
-            return item;
-        } else return null;
+    public long getAgingInterval() {
+        return agingInterval;
+    }
+
+    /**
+     * Sets period after which hit counters are halved, so that promotion follows recent popularity;
+     * {@link #UNBOUNDED} disables aging
+     * @param agingInterval Period in milliseconds
+     */
+    public void setAgingInterval(long agingInterval) {
+        this.agingInterval = agingInterval;
+        this.agingTicks = agingInterval == UNBOUNDED ? UNBOUNDED : CacheMaintenance.toTicks(agingInterval);
+    }
+
+    public CacheItem getItem(TermKey key) {
+        CacheItem item = this.map.get(key);
+        if (item == null) {
+            return null;
+        }
+        int now = CacheMaintenance.currentTick();
+        if (isExpired(item, now)) {
+            // sweep removes it, a new item is going to replace it anyway
+            return null;
+        }
+        int aging = agingTicks;
+        if (aging != UNBOUNDED) {
+            int periods = now / aging - item.getAccessTick() / aging;
+            if (periods > 0) {
+                item.decayCounter(periods);
+            }
+        }
+        item.touch(now);
+        int counter = item.increment();
+        this.moveItemAsNecessary(item, counter);
+        return item;
     }
 
     @Override
@@ -0,0 +1,132 @@
+package org.apache.lucene.analysis.hunspell.cache.internal;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-min sketch estimating how often a term has been requested (TinyLFU).
+ * Four 4-bit counters per term are packed into a long table; all counters are halved
+ * once the number of increments reaches ten times the capacity, so that old popularity fades out.
+ * Halving is done by {@link #maintain()} in the maintenance thread, not by the thread recording the occurrence.
+ * Updates are lock free; lost increments under contention are tolerated, the sketch is only an estimate.
+ */
+public class FrequencySketch {
+
+    static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    static final long RESET_MASK = 0x7777777777777777L;
+
+    private volatile AtomicLongArray table;
+    private volatile int sampleSize;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean resetting = new AtomicBoolean();
+
+    public FrequencySketch() {
+        this(16);
+    }
+
+    public FrequencySketch(long capacity) {
+        ensureCapacity(capacity);
+    }
+
+    /**
+     * Resizes sketch so it can track given number of entries; existing counts are dropped when table grows
+     * @param capacity Expected maximum number of cached entries
+     */
+    public synchronized void ensureCapacity(long capacity) {
+        int maximum = (int) Math.min(Math.max(capacity, 16), Integer.MAX_VALUE >>> 1);
+        if (table != null && table.length() >= maximum) {
+            return;
+        }
+        int length = Integer.highestOneBit(maximum - 1) << 1;
+        // mask is always derived from the table itself, readers never combine old and new values
+        this.table = new AtomicLongArray(length);
+        this.sampleSize = 10 * maximum;
+        this.size.set(0);
+    }
+
+    /**
+     * Returns estimated number of occurrences of the term, at most 15
+     * @param hashCode Term hash code
+     */
+    public int frequency(int hashCode) {
+        AtomicLongArray table = this.table;
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i, table.length() - 1);
+            int count = (int) ((table.get(index) >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records occurrence of the term
+     * @param hashCode Term hash code
+     */
+    public void increment(int hashCode) {
+        AtomicLongArray table = this.table;
+        int hash = spread(hashCode);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(table, indexOf(hash, i, table.length() - 1), start + i);
+        }
+        if (added) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Halves all counters when enough occurrences have been recorded since the last halving
+     */
+    public void maintain() {
+        if (size.get() >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(AtomicLongArray table, int i, int j) {
+        int offset = j << 2;
+        long mask = (0xfL << offset);
+        while (true) {
+            long current = table.get(i);
+            if ((current & mask) == mask) {
+                return false;
+            }
+            if (table.compareAndSet(i, current, current + (1L << offset))) {
+                return true;
+            }
+        }
+    }
+
+    /** Halves all counters; only one thread performs aging, concurrent increments may be lost */
+    void reset() {
+        if (resetting.compareAndSet(false, true)) {
+            try {
+                AtomicLongArray table = this.table;
+                for (int i = 0; i < table.length(); i++) {
+                    table.set(i, (table.get(i) >>> 1) & RESET_MASK);
+                }
+                size.set(size.get() >>> 1);
+            } finally {
+                resetting.set(false);
+            }
+        }
+    }
+
+    private static int indexOf(int item, int i, int mask) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & mask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
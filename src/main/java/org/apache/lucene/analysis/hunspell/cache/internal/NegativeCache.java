@@ -0,0 +1,107 @@
+package org.apache.lucene.analysis.hunspell.cache.internal;
+
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Set of terms which have no stems, kept apart from the cache levels so that unknown words (numbers, names,
+ * OCR noise) do not take their capacity. Only 64-bit fingerprints of the terms are stored, 8 bytes per term,
+ * in an open addressed table of fixed size; a false positive needs collision of the whole fingerprint.
+ * <p>
+ * Table is never resized: term is placed into one of {@link #PROBES} slots next to its home slot, when all of them
+ * are taken, the home slot is overwritten, so old fingerprints are forgotten and the set stays bounded.
+ * Readers and writers do not lock, slots are updated atomically.
+ */
+public class NegativeCache {
+
+    // slots examined per term
+    static final int PROBES = 8;
+
+    private static final long EMPTY = 0L;
+
+    private final AtomicLongArray slots;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * @param capacity Maximum number of terms; rounded up to power of two
+     */
+    public NegativeCache(int capacity) {
+        int slots = tableSize(capacity);
+        this.slots = new AtomicLongArray(slots);
+        this.mask = slots - 1;
+    }
+
+    /**
+     * Returns number of slots of the table for given capacity
+     */
+    public static int tableSize(int capacity) {
+        return Integer.highestOneBit(Math.max(PROBES, Math.min(capacity, 1 << 30) - 1) << 1);
+    }
+
+    public boolean contains(TermKey key) {
+        long fingerprint = fingerprint(key);
+        int index = (int) fingerprint & mask;
+        for (int i = 0; i < PROBES; i++) {
+            long slot = slots.get((index + i) & mask);
+            if (slot == fingerprint) {
+                return true;
+            }
+            if (slot == EMPTY) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public void add(TermKey key) {
+        long fingerprint = fingerprint(key);
+        int index = (int) fingerprint & mask;
+        for (int i = 0; i < PROBES; i++) {
+            int position = (index + i) & mask;
+            long slot = slots.get(position);
+            if (slot == fingerprint) {
+                return;
+            }
+            if (slot == EMPTY && slots.compareAndSet(position, EMPTY, fingerprint)) {
+                size.incrementAndGet();
+                return;
+            }
+        }
+        // neighbourhood is full, forget the term at home slot
+        slots.set(index, fingerprint);
+    }
+
+    /**
+     * Returns number of stored fingerprints
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public long ramBytesUsed() {
+        return 8L * slots.length();
+    }
+
+    // FNV-1a over chars of the key, finished by mixing of MurmurHash3; never EMPTY
+    static long fingerprint(TermKey key) {
+        char[] chars = key.getChars();
+        long h = 0xcbf29ce484222325L;
+        for (int i = key.getOffset(), end = key.getOffset() + key.getLength(); i < end; i++) {
+            h ^= chars[i];
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+}
@@ -0,0 +1,64 @@
+package org.apache.lucene.analysis.hunspell.cache.internal;
+
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Level of items pinned by query-time analysis. Only queries push into it, so indexing traffic never evicts
+ * its entries; it is bounded by its own quota and full level admits new item only if it is requested more often
+ * than the oldest one (when frequency sketch is set). Items are shared with the other levels, they are not moved.
+ */
+public class QueryLevel extends AbstractCacheMap {
+
+    public static final Logger LOGGER = Logger.getLogger(QueryLevel.class.getName());
+
+    volatile Map<TermKey, CacheItem> map = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean isPresent(TermKey key) {
+        return this.map.containsKey(key);
+    }
+
+    @Override
+    public CacheItem getItem(TermKey key) {
+        CacheItem item = this.map.get(key);
+        if (item != null) {
+            item.touch(CacheMaintenance.currentTick());
+        }
+        return item;
+    }
+
+    @Override
+    public void pushItem(TermKey key, CacheItem item) {
+        // level has no survive interval; the item keeps the ticks of the level it lives in
+        int writeTick = item.getWriteTick();
+        int accessTick = item.getAccessTick();
+        super.pushItem(key, item);
+        item.restoreTicks(writeTick, accessTick);
+    }
+
+    @Override
+    public void cleanCache() {
+        LOGGER.fine("Cleaning query cache");
+        // readers still holding the old map simply finish on it
+        this.map = new ConcurrentHashMap<>();
+        this.resetOrder();
+        this.lastCleaningTimestamp = System.currentTimeMillis();
+    }
+
+    @Override
+    protected Map<TermKey, CacheItem> getMap() {
+        return this.map;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryLevel{" +
+                "map=" + map +
+                '}';
+    }
+}
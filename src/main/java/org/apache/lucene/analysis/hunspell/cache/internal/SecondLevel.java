@@ -1,10 +1,10 @@
 package org.apache.lucene.analysis.hunspell.cache.internal;
 
 import org.apache.lucene.analysis.hunspell.cache.CacheItem;
-import org.apache.lucene.analysis.hunspell.cache.internal.AbstractCacheMap;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 public class SecondLevel extends AbstractCacheMap {
@@ -13,48 +13,49 @@ public class SecondLevel extends AbstractCacheMap {
 
     public final long DEFAULT_SURVIVAL_INTERVAL = 8 * 1000 * 3600;
 
-    long surviveInterval = DEFAULT_SURVIVAL_INTERVAL;
-    Map<String, CacheItem> map =  new HashMap<>();
+    volatile Map<TermKey, CacheItem> map =  new ConcurrentHashMap<>();
 
 
     public SecondLevel() {
         super();
+        setSurviveInterval(DEFAULT_SURVIVAL_INTERVAL);
     }
 
     @Override
-    public boolean isPresent(String term) {
-        return this.map.containsKey(term);
+    public boolean isPresent(TermKey key) {
+        return this.map.containsKey(key);
     }
 
     @Override
-    public CacheItem getItem(String term) {
-        CacheItem item = this.map.get(term);
-        if (item != null) {
-            item.increment();
-            return item;
-        } else return null;
+    public CacheItem getItem(TermKey key) {
+        CacheItem item = this.map.get(key);
+        if (item == null) {
+            return null;
+        }
+        int now = CacheMaintenance.currentTick();
+        if (isExpired(item, now)) {
+            return null;
+        }
+        item.touch(now);
+        item.increment();
+        return item;
     }
 
     @Override
     public void cleanCache() {
         LOGGER.fine("Cleaning cache L2");
-        this.map.clear();
-        this.map = new HashMap<>();
+        Map<TermKey, CacheItem> cleaned = this.map;
+        // readers still holding the old map simply finish on it
+        this.map = new ConcurrentHashMap<>();
+        this.resetOrder();
         this.lastCleaningTimestamp = System.currentTimeMillis();
+        if (getDemotion() != null) {
+            cleaned.values().forEach(this::demote);
+        }
     }
 
     @Override
-    public long getSurviveInterval() {
-        return this.surviveInterval;
-    }
-
-    @Override
-    public void setSurviveInterval(long surviveInterval) {
-        this.surviveInterval = surviveInterval;
-    }
-
-    @Override
-    protected Map<String, CacheItem> getMap() {
+    protected Map<TermKey, CacheItem> getMap() {
         return this.map;
     }
 
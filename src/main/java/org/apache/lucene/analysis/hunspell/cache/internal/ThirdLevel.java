@@ -0,0 +1,368 @@
+package org.apache.lucene.analysis.hunspell.cache.internal;
+
+import org.apache.lucene.analysis.hunspell.cache.Cache;
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.CacheStats;
+import org.apache.lucene.analysis.hunspell.cache.StemPool;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.util.CharsRef;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * Off-heap cache level for entries demoted from {@link SecondLevel}. Entries live in one direct or memory-mapped
+ * buffer, so they cost no object headers and the garbage collector never scans them.
+ * <p>
+ * Buffer starts with open addressing table; each slot holds term hash and position of the record (+1, zero
+ * means empty slot). Records are appended behind the table:
+ * <pre>
+ *   key length (char), key chars, number of stems (char), { stem length (char), stem chars }
+ * </pre>
+ * all chars as UTF-16 code units. Record area is a ring: when either the table or the area is full, the oldest
+ * records are evicted one by one until the new record fits, so a push never costs more than the records it
+ * overwrites. Reads share read lock, writes take write lock.
+ */
+public class ThirdLevel implements Cache {
+
+    public static final Logger LOGGER = Logger.getLogger(ThirdLevel.class.getName());
+
+    // expected average record size, used for sizing the table
+    static final int AVERAGE_RECORD_SIZE = 64;
+    static final int SLOT_SIZE = 8;
+    static final int MAX_LENGTH = Character.MAX_VALUE;
+
+    private final ByteBuffer buffer;
+    private final int slots;
+    private final int dataStart;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // records live in [tail, head), or in [tail, dataEnd) and [dataStart, head) when the ring has wrapped
+    private int head;
+    private int tail;
+    private int dataEnd;
+    private boolean wrapped;
+    private int recordBytes;
+    private int size;
+
+    private volatile CacheStats stats = new CacheStats();
+    private volatile StemPool stemPool = StemPool.DEFAULT;
+
+    /**
+     * Creates level over given buffer; previous content of the buffer is discarded
+     * @param buffer
+     */
+    public ThirdLevel(ByteBuffer buffer) {
+        this.buffer = buffer;
+        int capacity = buffer.capacity();
+        int wanted = Math.max(16, capacity / AVERAGE_RECORD_SIZE);
+        this.slots = Integer.highestOneBit(wanted);
+        this.dataStart = this.slots * SLOT_SIZE;
+        if (this.dataStart >= capacity) {
+            throw new IllegalArgumentException("Buffer is too small: "+capacity);
+        }
+        clear();
+    }
+
+    /**
+     * Allocates level in direct memory
+     * @param bytes Size of the level in bytes
+     * @return
+     */
+    public static ThirdLevel allocateDirect(int bytes) {
+        return new ThirdLevel(ByteBuffer.allocateDirect(bytes));
+    }
+
+    /**
+     * Maps level to a file; file content is not preserved
+     * @param file File backing the level
+     * @param bytes Size of the level in bytes
+     * @return
+     * @throws IOException
+     */
+    public static ThirdLevel map(Path file, int bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new ThirdLevel(channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns number of bytes occupied by the table and records
+     */
+    public int getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            return dataStart + recordBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setStats(CacheStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Sets pool the stems of promoted items are interned into
+     */
+    public void setStemPool(StemPool stemPool) {
+        this.stemPool = stemPool;
+    }
+
+    /**
+     * Drops all entries
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < dataStart; i += SLOT_SIZE) {
+                buffer.putLong(i, 0L);
+            }
+            this.head = dataStart;
+            this.tail = dataStart;
+            this.wrapped = false;
+            this.recordBytes = 0;
+            this.size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isPresent(TermKey key) {
+        lock.readLock().lock();
+        try {
+            return findRecord(key) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CacheItem getItem(TermKey key) {
+        lock.readLock().lock();
+        try {
+            int record = findRecord(key);
+            if (record < 0) {
+                return null;
+            }
+            int position = record + 2 + 2 * buffer.getChar(record);
+            CharsRef[] stems = new CharsRef[buffer.getChar(position)];
+            position += 2;
+            for (int i = 0; i < stems.length; i++) {
+                char[] chars = new char[buffer.getChar(position)];
+                position += 2;
+                for (int j = 0; j < chars.length; j++, position += 2) {
+                    chars[j] = buffer.getChar(position);
+                }
+                stems[i] = new CharsRef(chars, 0, chars.length);
+            }
+            return new CacheItem(key.copy(), stems, stemPool);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void pushItem(TermKey key, CacheItem item) {
+        List<CharsRef> stems = item.getStems();
+        int recordSize = 4 + 2 * key.getLength();
+        if (key.getLength() > MAX_LENGTH || stems.size() > MAX_LENGTH) {
+            return;
+        }
+        for (CharsRef stem : stems) {
+            if (stem.length > MAX_LENGTH) {
+                return;
+            }
+            recordSize += 2 + 2 * stem.length;
+        }
+        if (recordSize > buffer.capacity() - dataStart) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (findRecord(key) >= 0) {
+                return;
+            }
+            int record = reserve(recordSize);
+            int position = record;
+            position = putChars(position, key.getChars(), key.getOffset(), key.getLength());
+            buffer.putChar(position, (char) stems.size());
+            position += 2;
+            for (CharsRef stem : stems) {
+                position = putChars(position, stem.chars, stem.offset, stem.length);
+            }
+            head = position;
+            recordBytes += recordSize;
+
+            int slot = spread(key.hashCode()) & (slots - 1);
+            while (buffer.getInt(slot * SLOT_SIZE + 4) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            buffer.putInt(slot * SLOT_SIZE, key.hashCode());
+            buffer.putInt(slot * SLOT_SIZE + 4, record + 1);
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // evicts the oldest records until the table has a free slot and the record fits at the head; caller holds the write lock
+    private int reserve(int recordSize) {
+        int evicted = 0;
+        while (size >= slots * 3 / 4) {
+            evictOldest();
+            evicted++;
+        }
+        while (true) {
+            if (size == 0) {
+                head = tail = dataStart;
+                wrapped = false;
+            }
+            if (!wrapped) {
+                if (head + recordSize <= buffer.capacity()) {
+                    break;
+                }
+                // the rest of the area is left unused until the oldest records are evicted
+                dataEnd = head;
+                head = dataStart;
+                wrapped = true;
+            }
+            if (head + recordSize <= tail) {
+                break;
+            }
+            evictOldest();
+            evicted++;
+        }
+        if (evicted > 0) {
+            stats.recordEvictions(evicted);
+        }
+        return head;
+    }
+
+    private void evictOldest() {
+        int record = tail;
+        int length = recordSize(record);
+        removeSlot(record);
+        tail = record + length;
+        recordBytes -= length;
+        size--;
+        if (wrapped && tail >= dataEnd) {
+            tail = dataStart;
+            wrapped = false;
+        }
+    }
+
+    private int recordSize(int record) {
+        int position = record + 2 + 2 * buffer.getChar(record);
+        int stems = buffer.getChar(position);
+        position += 2;
+        for (int i = 0; i < stems; i++) {
+            position += 2 + 2 * buffer.getChar(position);
+        }
+        return position - record;
+    }
+
+    // removes slot of the record, shifts back the following slots of the probe sequence (linear probing deletion)
+    private void removeSlot(int record) {
+        int hash = 0;
+        for (int i = 0, length = buffer.getChar(record), position = record + 2; i < length; i++, position += 2) {
+            hash = 31 * hash + buffer.getChar(position);
+        }
+        int mask = slots - 1;
+        int slot = spread(hash) & mask;
+        while (buffer.getInt(slot * SLOT_SIZE + 4) != record + 1) {
+            slot = (slot + 1) & mask;
+        }
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int nextRecord = buffer.getInt(next * SLOT_SIZE + 4);
+            if (nextRecord == 0) {
+                break;
+            }
+            int home = spread(buffer.getInt(next * SLOT_SIZE)) & mask;
+            // entry stays if its home lies cyclically in (slot, next]
+            boolean stays = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if (!stays) {
+                buffer.putLong(slot * SLOT_SIZE, buffer.getLong(next * SLOT_SIZE));
+                slot = next;
+            }
+        }
+        buffer.putLong(slot * SLOT_SIZE, 0L);
+    }
+
+    private int putChars(int position, char[] chars, int offset, int length) {
+        buffer.putChar(position, (char) length);
+        position += 2;
+        for (int i = 0; i < length; i++, position += 2) {
+            buffer.putChar(position, chars[offset + i]);
+        }
+        return position;
+    }
+
+    // position of the record or -1; caller holds the lock
+    private int findRecord(TermKey key) {
+        int hash = key.hashCode();
+        int slot = spread(hash) & (slots - 1);
+        while (true) {
+            int record = buffer.getInt(slot * SLOT_SIZE + 4) - 1;
+            if (record < 0) {
+                return -1;
+            }
+            if (buffer.getInt(slot * SLOT_SIZE) == hash && keyEquals(record, key)) {
+                return record;
+            }
+            slot = (slot + 1) & (slots - 1);
+        }
+    }
+
+    private boolean keyEquals(int record, TermKey key) {
+        int length = buffer.getChar(record);
+        if (length != key.getLength()) {
+            return false;
+        }
+        char[] chars = key.getChars();
+        int offset = key.getOffset();
+        for (int i = 0, position = record + 2; i < length; i++, position += 2) {
+            if (buffer.getChar(position) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+    @Override
+    public String toString() {
+        return "ThirdLevel{" +
+                "size=" + size +
+                ", capacity=" + buffer.capacity() +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+package org.apache.lucene.analysis.hunspell.cache.remote;
+
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.util.CharsRef;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary protocol of the remote stem cache. Client sends frames
+ * <pre>
+ * GET: byte 1, int id, UTF namespace, int count, count * term
+ * PUT: byte 2, int id, UTF namespace, int count, count * (term, stems)
+ * </pre>
+ * server answers every GET by
+ * <pre>
+ * byte 1, int id, int count, count * (byte found, [stems])
+ * </pre>
+ * in the order of the terms; PUT has no answer. Term is unsigned short length followed by UTF-16 chars,
+ * stems are unsigned short count followed by terms.
+ */
+final class Protocol {
+
+    static final byte GET = 1;
+    static final byte PUT = 2;
+
+    /** Longest term and the most stems which can be sent */
+    static final int MAX_LENGTH = 0xFFFF;
+
+    private Protocol() {}
+
+    static boolean fits(CacheItem item) {
+        if (item.getKey().getLength() > MAX_LENGTH || item.getStemCount() > MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < item.getStemCount(); i++) {
+            if (item.getStem(i).length > MAX_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeTerm(DataOutputStream out, char[] chars, int offset, int length) throws IOException {
+        out.writeShort(length);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            out.writeChar(chars[i]);
+        }
+    }
+
+    static void writeTerm(DataOutputStream out, TermKey key) throws IOException {
+        writeTerm(out, key.getChars(), key.getOffset(), key.getLength());
+    }
+
+    static void writeStems(DataOutputStream out, CacheItem item) throws IOException {
+        out.writeShort(item.getStemCount());
+        for (int i = 0; i < item.getStemCount(); i++) {
+            CharsRef stem = item.getStem(i);
+            writeTerm(out, stem.chars, stem.offset, stem.length);
+        }
+    }
+
+    static char[] readTerm(DataInputStream in) throws IOException {
+        char[] chars = new char[in.readUnsignedShort()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return chars;
+    }
+
+    static char[][] readStems(DataInputStream in) throws IOException {
+        char[][] stems = new char[in.readUnsignedShort()][];
+        for (int i = 0; i < stems.length; i++) {
+            stems[i] = readTerm(in);
+        }
+        return stems;
+    }
+
+    static void writeStems(DataOutputStream out, char[][] stems) throws IOException {
+        out.writeShort(stems.length);
+        for (char[] stem : stems) {
+            writeTerm(out, stem, 0, stem.length);
+        }
+    }
+}
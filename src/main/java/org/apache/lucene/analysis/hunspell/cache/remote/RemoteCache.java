@@ -0,0 +1,318 @@
+package org.apache.lucene.analysis.hunspell.cache.remote;
+
+import org.apache.lucene.analysis.hunspell.cache.CacheBackend;
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.StemPool;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.util.CharsRef;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client of the remote stem cache ({@link StemCacheServer}), shared by nodes analyzing the same languages.
+ * <p>
+ * Lookups of all analyzing threads are queued and sent by one sender thread in batches; the caller waits for
+ * the answer at most the lookup timeout, then it stems the term itself. Computed items are written behind:
+ * they are queued and sent in batches, nobody waits for them, they are dropped when the queue is full.
+ * When the connection breaks, lookups return null immediately until it is established again.
+ */
+public class RemoteCache implements CacheBackend {
+
+    public static final Logger LOGGER = Logger.getLogger(RemoteCache.class.getName());
+
+    // pause between attempts to connect
+    static final long RECONNECT_MILLIS = 1000;
+
+    private final InetSocketAddress address;
+    private final String namespace;
+    private final StemPool stemPool;
+    private final long timeoutMillis;
+    private final int batchSize;
+    private final BlockingQueue<Object> queue;
+
+    // lookups sent and not answered yet, by request id
+    private final Map<Integer, Lookup[]> inFlight = new ConcurrentHashMap<>();
+    private final Thread sender;
+    private int nextId;
+
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private Socket socket;
+    private DataOutputStream out;
+    private long lastAttempt;
+
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates client and starts connecting in background
+     * @param address Address of the server
+     * @param namespace Namespace of the stems on the server
+     * @param stemPool Pool of the cache the found stems are interned into
+     * @param timeoutMillis How long lookup waits for the answer
+     * @param batchSize Maximum number of lookups or writes sent in one frame
+     * @param queueSize Maximum number of queued lookups and writes
+     */
+    public RemoteCache(InetSocketAddress address, String namespace, StemPool stemPool, long timeoutMillis, int batchSize, int queueSize) {
+        this.address = address;
+        this.namespace = namespace;
+        this.stemPool = stemPool;
+        this.timeoutMillis = timeoutMillis;
+        this.batchSize = batchSize;
+        this.queue = new LinkedBlockingQueue<>(queueSize);
+        this.sender = new Thread(this::send, "hunspell-remote-cache-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    @Override
+    public String getName() {
+        return "remote " + address;
+    }
+
+    @Override
+    public boolean isPresent(TermKey key) {
+        return getItem(key) != null;
+    }
+
+    @Override
+    public CacheItem getItem(TermKey key) {
+        if (!connected) {
+            return null;
+        }
+        Lookup lookup = new Lookup(key.copy());
+        if (!queue.offer(lookup)) {
+            dropped.increment();
+            return null;
+        }
+        try {
+            return lookup.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void pushItem(TermKey key, CacheItem item) {
+        if (!Protocol.fits(item) || !queue.offer(item)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Returns number of lookups which have not been answered in time
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Returns number of lookups and writes dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sender.interrupt();
+        disconnect();
+    }
+
+    private void send() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        List<Lookup> lookups = new ArrayList<>(batchSize);
+        List<CacheItem> writes = new ArrayList<>(batchSize);
+        while (!closed) {
+            try {
+                if (!connected && !connect()) {
+                    Thread.sleep(RECONNECT_MILLIS / 10);
+                    continue;
+                }
+                Object first = queue.poll(RECONNECT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // everything queued while the previous batch was being written goes together
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                for (Object request : batch) {
+                    if (request instanceof Lookup) {
+                        lookups.add((Lookup) request);
+                    } else {
+                        writes.add((CacheItem) request);
+                    }
+                }
+                write(lookups, writes);
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.log(Level.WARNING, "Remote stem cache " + address + " failed", e);
+                }
+                disconnect();
+            } finally {
+                for (Lookup lookup : lookups) {
+                    // no answer is coming for lookups which have not been sent
+                    if (lookup.id < 0) {
+                        lookup.future.complete(null);
+                    }
+                }
+                batch.clear();
+                lookups.clear();
+                writes.clear();
+            }
+        }
+    }
+
+    private void write(List<Lookup> lookups, List<CacheItem> writes) throws IOException {
+        DataOutputStream out = this.out;
+        if (out == null) {
+            return;
+        }
+        if (!lookups.isEmpty()) {
+            int id = nextId++;
+            Lookup[] sent = lookups.toArray(new Lookup[0]);
+            inFlight.put(id, sent);
+            out.writeByte(Protocol.GET);
+            out.writeInt(id);
+            out.writeUTF(namespace);
+            out.writeInt(sent.length);
+            for (Lookup lookup : sent) {
+                lookup.id = id;
+                Protocol.writeTerm(out, lookup.key);
+            }
+        }
+        if (!writes.isEmpty()) {
+            out.writeByte(Protocol.PUT);
+            out.writeInt(nextId++);
+            out.writeUTF(namespace);
+            out.writeInt(writes.size());
+            for (CacheItem item : writes) {
+                Protocol.writeTerm(out, item.getKey());
+                Protocol.writeStems(out, item);
+            }
+        }
+        out.flush();
+    }
+
+    private boolean connect() {
+        long now = System.currentTimeMillis();
+        if (now - lastAttempt < RECONNECT_MILLIS) {
+            return false;
+        }
+        lastAttempt = now;
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, (int) Math.max(timeoutMillis, RECONNECT_MILLIS));
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            synchronized (this) {
+                this.socket = socket;
+                this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                this.connected = true;
+            }
+            Thread receiver = new Thread(() -> receive(socket, in), "hunspell-remote-cache-receiver");
+            receiver.setDaemon(true);
+            receiver.start();
+            LOGGER.info("Connected to remote stem cache " + address);
+            return true;
+        } catch (IOException e) {
+            IOUtils.closeWhileHandlingException(socket);
+            LOGGER.log(Level.FINE, "Cannot connect to remote stem cache " + address, e);
+            return false;
+        }
+    }
+
+    private void receive(Socket socket, DataInputStream in) {
+        try {
+            while (true) {
+                byte op = in.readByte();
+                if (op != Protocol.GET) {
+                    throw new IOException("Unexpected answer " + op);
+                }
+                Lookup[] lookups = inFlight.remove(in.readInt());
+                int count = in.readInt();
+                if (lookups == null || lookups.length != count) {
+                    throw new IOException("Answer does not match any request");
+                }
+                for (Lookup lookup : lookups) {
+                    CacheItem item = null;
+                    if (in.readByte() == 1) {
+                        char[][] stems = Protocol.readStems(in);
+                        CharsRef[] refs = new CharsRef[stems.length];
+                        for (int i = 0; i < stems.length; i++) {
+                            refs[i] = new CharsRef(stems[i], 0, stems[i].length);
+                        }
+                        item = new CacheItem(lookup.key, refs, stemPool);
+                    }
+                    lookup.future.complete(item);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed && this.socket == socket) {
+                LOGGER.log(Level.WARNING, "Remote stem cache " + address + " disconnected", e);
+            }
+        } finally {
+            if (this.socket == socket) {
+                disconnect();
+            }
+        }
+    }
+
+    private synchronized void disconnect() {
+        connected = false;
+        IOUtils.closeWhileHandlingException(socket);
+        socket = null;
+        out = null;
+        for (Lookup[] lookups : inFlight.values()) {
+            for (Lookup lookup : lookups) {
+                lookup.future.complete(null);
+            }
+        }
+        inFlight.clear();
+    }
+
+    private static final class Lookup {
+
+        final TermKey key;
+        final CompletableFuture<CacheItem> future = new CompletableFuture<>();
+        // id of the request which has sent it, -1 before it is sent
+        int id = -1;
+
+        Lookup(TermKey key) {
+            this.key = key;
+        }
+    }
+}
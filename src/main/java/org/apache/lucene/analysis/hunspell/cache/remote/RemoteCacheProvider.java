@@ -0,0 +1,54 @@
+package org.apache.lucene.analysis.hunspell.cache.remote;
+
+import org.apache.lucene.analysis.hunspell.cache.CacheBackend;
+import org.apache.lucene.analysis.hunspell.cache.CacheBackendProvider;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * Provider of {@link RemoteCache}, selected by name <code>remote</code>. Arguments:
+ * <ul>
+ *     <li><code>host</code> - host of the {@link StemCacheServer}, default localhost</li>
+ *     <li><code>port</code> - port of the server, required</li>
+ *     <li><code>timeout</code> - milliseconds a lookup waits for the answer, default {@value #DEFAULT_TIMEOUT}</li>
+ *     <li><code>batch</code> - maximum lookups or writes in one frame, default {@value #DEFAULT_BATCH}</li>
+ *     <li><code>queue</code> - maximum queued lookups and writes, default {@value #DEFAULT_QUEUE}</li>
+ * </ul>
+ */
+public class RemoteCacheProvider implements CacheBackendProvider {
+
+    public static final String NAME = "remote";
+
+    public static final long DEFAULT_TIMEOUT = 5;
+    public static final int DEFAULT_BATCH = 256;
+    public static final int DEFAULT_QUEUE = 10000;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public CacheBackend create(CacheMap cacheMap, String namespace, Map<String, String> args) {
+        String host = args.getOrDefault("host", "localhost");
+        String port = args.get("port");
+        if (port == null) {
+            throw new IllegalArgumentException("Remote cache needs port");
+        }
+        long timeout = parse(args, "timeout", DEFAULT_TIMEOUT);
+        int batch = (int) parse(args, "batch", DEFAULT_BATCH);
+        int queue = (int) parse(args, "queue", DEFAULT_QUEUE);
+        if (timeout < 0 || batch <= 0 || queue <= 0) {
+            throw new IllegalArgumentException("Remote cache needs non-negative timeout, positive batch and queue");
+        }
+        InetSocketAddress address = new InetSocketAddress(host, Integer.parseInt(port));
+        return new RemoteCache(address, namespace, cacheMap.getStemPool(), timeout, batch, queue);
+    }
+
+    private static long parse(Map<String, String> args, String name, long defaultValue) {
+        String value = args.get(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
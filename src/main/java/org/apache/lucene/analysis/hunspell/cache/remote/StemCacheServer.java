@@ -0,0 +1,154 @@
+package org.apache.lucene.analysis.hunspell.cache.remote;
+
+import org.apache.lucene.util.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server of the remote stem cache; keeps stems written by the nodes and answers their lookups,
+ * see {@link Protocol}. Stems of different namespaces are kept apart. When the server is full,
+ * new terms are not stored; it is a plain shared map, not a cache with eviction.
+ * <p>
+ * Server could run inside one of the nodes or standalone:
+ * <pre>
+ * java -cp ... org.apache.lucene.analysis.hunspell.cache.remote.StemCacheServer port [maxEntries]
+ * </pre>
+ */
+public class StemCacheServer implements Closeable {
+
+    public static final Logger LOGGER = Logger.getLogger(StemCacheServer.class.getName());
+
+    private final int maxEntries;
+    private final ServerSocket serverSocket;
+    private final ConcurrentHashMap<String, char[][]> entries = new ConcurrentHashMap<>();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Binds the server; it does not accept connections until started
+     * @param port Port to listen on, 0 for any free port
+     * @param maxEntries Maximum number of stored terms
+     * @throws IOException
+     */
+    public StemCacheServer(int port, int maxEntries) throws IOException {
+        this.maxEntries = maxEntries;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: StemCacheServer port [maxEntries]");
+            System.exit(1);
+        }
+        int maxEntries = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+        StemCacheServer server = new StemCacheServer(Integer.parseInt(args[0]), maxEntries);
+        LOGGER.info("Stem cache server listening on port " + server.getPort());
+        server.accept();
+    }
+
+    /**
+     * Starts accepting connections in background
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::accept, "hunspell-stem-cache-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns number of stored terms
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        IOUtils.closeWhileHandlingException(serverSocket);
+        IOUtils.closeWhileHandlingException(clients);
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                clients.add(socket);
+                Thread client = new Thread(() -> serve(socket), "hunspell-stem-cache-client");
+                client.setDaemon(true);
+                client.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.log(Level.WARNING, "Cannot accept connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                byte op = in.readByte();
+                int id = in.readInt();
+                String namespace = in.readUTF();
+                int count = in.readInt();
+                if (op == Protocol.GET) {
+                    out.writeByte(Protocol.GET);
+                    out.writeInt(id);
+                    out.writeInt(count);
+                    for (int i = 0; i < count; i++) {
+                        char[][] stems = entries.get(key(namespace, Protocol.readTerm(in)));
+                        out.writeByte(stems != null ? 1 : 0);
+                        if (stems != null) {
+                            Protocol.writeStems(out, stems);
+                        }
+                    }
+                    // answer as soon as the lookups are read, a PUT could follow
+                    out.flush();
+                } else if (op == Protocol.PUT) {
+                    for (int i = 0; i < count; i++) {
+                        String key = key(namespace, Protocol.readTerm(in));
+                        char[][] stems = Protocol.readStems(in);
+                        if (entries.size() < maxEntries) {
+                            entries.putIfAbsent(key, stems);
+                        }
+                    }
+                } else {
+                    throw new IOException("Unknown operation " + op);
+                }
+            }
+        } catch (EOFException e) {
+            // client disconnected
+        } catch (IOException e) {
+            if (!closed) {
+                LOGGER.log(Level.WARNING, "Client " + socket.getRemoteSocketAddress() + " failed", e);
+            }
+        } finally {
+            clients.remove(socket);
+            IOUtils.closeWhileHandlingException(socket);
+        }
+    }
+
+    private static String key(String namespace, char[] term) {
+        return new StringBuilder(namespace.length() + 1 + term.length).append(namespace).append('\u0000').append(term).toString();
+    }
+}
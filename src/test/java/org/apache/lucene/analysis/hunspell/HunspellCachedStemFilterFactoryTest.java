@@ -0,0 +1,278 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.EvictionPolicy;
+import org.apache.lucene.analysis.hunspell.cache.remote.RemoteCache;
+import org.apache.lucene.analysis.hunspell.cache.remote.StemCacheServer;
+import org.apache.lucene.analysis.util.ClasspathResourceLoader;
+import org.apache.lucene.analysis.util.FilesystemResourceLoader;
+import org.apache.lucene.analysis.util.ResourceLoader;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.IOUtils;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HunspellCachedStemFilterFactoryTest {
+
+    static HunspellCachedStemFilterFactory factory(String... params) throws Exception {
+        return factory(new ClasspathResourceLoader(HunspellCachedStemFilterFactoryTest.class), params);
+    }
+
+    static HunspellCachedStemFilterFactory factory(ResourceLoader loader, String... params) throws Exception {
+        Map<String, String> args = new HashMap<>();
+        args.put("dictionary", "test.dic");
+        args.put("affix", "test.aff");
+        for (int i = 0; i < params.length; i += 2) {
+            args.put(params[i], params[i + 1]);
+        }
+        HunspellCachedStemFilterFactory factory = new HunspellCachedStemFilterFactory(args);
+        factory.inform(loader);
+        return factory;
+    }
+
+    static WhitespaceTokenizer tokenizer(String text) {
+        WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader(text));
+        return tokenizer;
+    }
+
+    @Test
+    public void testStemming() throws Exception {
+        HunspellCachedStemFilterFactory factory = factory();
+        assertEquals(Arrays.asList("walk", "books", "+book"),
+                HunspellCachedStemFilterTest.analyze(factory.create(tokenizer("walked books"))));
+    }
+
+    @Test
+    public void testDictionaryIsShared() throws Exception {
+        HunspellCachedStemFilterFactory first = factory();
+        HunspellCachedStemFilterFactory second = factory();
+        HunspellCachedStemFilterFactory ignoringCase = factory("ignoreCase", "true");
+        assertSame(first.getDictionary(), second.getDictionary());
+        assertNotSame(first.getDictionary(), ignoringCase.getDictionary());
+
+        // reload releases the previous lease; the dictionary is private, factories of other tests do not hold its leases
+        Path dir = Files.createTempDirectory("lease");
+        try {
+            Files.write(dir.resolve("lease.dic"), Arrays.asList("1", "lease"), StandardCharsets.UTF_8);
+            ResourceLoader loader = new FilesystemResourceLoader(dir, new ClasspathResourceLoader(HunspellCachedStemFilterFactoryTest.class));
+            HunspellCachedStemFilterFactory leasing = factory(loader, "dictionary", "lease.dic");
+            HunspellCachedStemFilterFactory other = factory(loader, "dictionary", "lease.dic");
+            String key = leasing.getUniqIdent();
+            assertEquals(2, DictionaryRegistry.references(key));
+            leasing.inform(loader);
+            assertEquals(2, DictionaryRegistry.references(key));
+            assertSame(leasing.getDictionary(), other.getDictionary());
+        } finally {
+            IOUtils.rm(dir);
+        }
+    }
+
+    @Test
+    public void testIdentityFollowsContentAndOptions() throws Exception {
+        HunspellCachedStemFilterFactory first = factory();
+        // the same content under a different name
+        HunspellCachedStemFilterFactory copy = factory("dictionary", "test-copy.dic");
+        HunspellCachedStemFilterFactory ignoringCase = factory("ignoreCase", "true");
+        HunspellCachedStemFilterFactory otherAffix = factory("affix", "test-other.aff");
+        assertEquals(first.getUniqIdent(), copy.getUniqIdent());
+        assertNotEquals(first.getUniqIdent(), ignoringCase.getUniqIdent());
+        assertNotEquals(first.getUniqIdent(), otherAffix.getUniqIdent());
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        HunspellCachedStemFilterFactory factory = factory();
+        HunspellCachedStemFilterTest.analyze(factory.create(tokenizer("walks walks talked")));
+
+        Map<String, Object> metrics = factory.getMetricsSnapshot();
+        assertTrue(((Number) metrics.get("CACHE.hunspell.stems.misses")).longValue() > 0);
+        assertTrue(((Number) metrics.get("CACHE.hunspell.stems.hitsL0")).longValue() > 0);
+        assertTrue(metrics.containsKey("CACHE.hunspell.stems.sizeL1"));
+
+        ObjectName name = StemCacheMetrics.objectName(factory.getUniqIdent(), StemmerCachedWrapper.STEMS);
+        Object misses = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Misses");
+        assertTrue(((Long) misses) > 0);
+    }
+
+    @Test
+    public void testCacheParameters() throws Exception {
+        HunspellCachedStemFilterFactory factory = factory("maxL1", "1234", "l1L2", "7", "evictionPolicy", "fifo");
+        CacheMap cacheMap = factory.getCache();
+        assertEquals(1234, cacheMap.getMaximumSizeL1());
+        assertEquals(7, cacheMap.getSurviveThreshold());
+        assertEquals(EvictionPolicy.FIFO, cacheMap.getEvictionPolicy());
+
+        // shared cache follows the factory informed last
+        factory("maxL1", "2345");
+        assertEquals(2345, cacheMap.getMaximumSizeL1());
+    }
+
+    @Test
+    public void testCoreScope() throws Exception {
+        HunspellCachedStemFilterFactory shared = factory();
+        HunspellCachedStemFilterFactory core = factory("cacheScope", "core", "maxL1", "10");
+        assertNotSame(shared.getCache(), core.getCache());
+        assertEquals(10, core.getCache().getMaximumSizeL1());
+
+        assertEquals(Arrays.asList("walk", "books", "+book"),
+                HunspellCachedStemFilterTest.analyze(core.create(tokenizer("walked books"))));
+        assertEquals(2, core.getCache().getSizeL1());
+    }
+
+    @Test
+    public void testBatchSize() throws Exception {
+        HunspellCachedStemFilterFactory factory = factory("batchSize", "2");
+        TokenStream stream = factory.create(tokenizer("walks books"));
+        assertTrue(stream instanceof HunspellCachedBatchStemFilter);
+        assertEquals(Arrays.asList("walk", "books", "+book"), HunspellCachedStemFilterTest.analyze(stream));
+    }
+
+    @Test
+    public void testWarmTerms() throws Exception {
+        HunspellCachedStemFilterFactory factory = factory("cacheScope", "core", "warmTerms", "test.terms", "warmCount", "3");
+        CacheMap cacheMap = factory.getCache();
+        assertEquals(3, cacheMap.getSecondLevel().size());
+        assertTrue(cacheMap.getSecondLevel().isPresent("walks"));
+        assertFalse(cacheMap.getSecondLevel().isPresent("xyz"));
+        HunspellCachedStemFilterTest.analyze(factory.create(tokenizer("books walks")));
+        assertEquals(0, cacheMap.getMisses());
+        assertEquals(2, cacheMap.getHitsL2());
+    }
+
+    @Test
+    public void testMalformedTermListLines() throws Exception {
+        byte[] list = "walks 40\nbooks many\ntalked 12\nxyz\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("walks", "talked", "xyz"), CacheWarmer.readTermList(new ByteArrayInputStream(list), 0));
+    }
+
+    @Test
+    public void testWarmFoldedKeys() throws Exception {
+        HunspellCachedStemFilterFactory factory = factory("cacheScope", "core", "foldCase", "true");
+        // "Praha" and "PRAHA" share the lower case component
+        assertEquals(3, factory.warm(Arrays.asList("Praha", "PRAHA")));
+        CacheMap cacheMap = factory.getCache();
+        assertEquals(Arrays.asList("praha", "Praha", "Praha"),
+                HunspellCachedStemFilterTest.analyze(factory.create(tokenizer("praha Praha PRAHA"))));
+        assertEquals(0, cacheMap.getMisses());
+    }
+
+    @Test
+    public void testWarmFromIndex() throws Exception {
+        Directory directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (String text : Arrays.asList("walks books", "walks talked", "walks books xyz")) {
+                Document document = new Document();
+                document.add(new TextField("text", text, Field.Store.NO));
+                writer.addDocument(document);
+            }
+        }
+        try (IndexReader reader = DirectoryReader.open(directory)) {
+            assertEquals(Arrays.asList("walks", "books"), CacheWarmer.topTerms(reader, "text", 2));
+            HunspellCachedStemFilterFactory factory = factory("cacheScope", "core", "maxL2", "1");
+            assertEquals(2, factory.warm(reader, "text", 2));
+            CacheMap cacheMap = factory.getCache();
+            // the most frequent term is in the hot set
+            assertTrue(cacheMap.getSecondLevel().isPresent("walks"));
+            assertTrue(cacheMap.getFirstLevel().isPresent("books"));
+            // already cached terms are not loaded again
+            assertEquals(0, factory.warm(reader, "text", 2));
+        }
+    }
+
+    @Test
+    public void testStemTable() throws Exception {
+        HunspellCachedStemFilterFactory plain = factory();
+        Path dir = Files.createTempDirectory("stemtable");
+        try {
+            writeTable(dir.resolve("test.stems"), plain.getDictionary(), plain.getUniqIdent());
+            writeTable(dir.resolve("other.stems"), plain.getDictionary(), "other");
+            ResourceLoader loader = new FilesystemResourceLoader(dir, new ClasspathResourceLoader(HunspellCachedStemFilterFactoryTest.class));
+
+            HunspellCachedStemFilterFactory factory = factory(loader, "stemTable", "test.stems");
+            assertNotNull(factory.getStemTable());
+            assertEquals(Arrays.asList("walk", "books", "+book"),
+                    HunspellCachedStemFilterTest.analyze(factory.create(tokenizer("walked books"))));
+            // table of another dictionary is ignored
+            assertNull(factory(loader, "stemTable", "other.stems").getStemTable());
+        } finally {
+            IOUtils.rm(dir);
+        }
+    }
+
+    private static void writeTable(Path file, Dictionary dictionary, String dictionaryKey) throws Exception {
+        try (OutputStream os = Files.newOutputStream(file)) {
+            StemTable.compile(dictionary, dictionaryKey, Arrays.asList("walked", "books")).write(os);
+        }
+    }
+
+    @Test
+    public void testRemoteBackend() throws Exception {
+        try (StemCacheServer server = new StemCacheServer(0, 1000)) {
+            server.start();
+            // core scope, shared cache of other tests stays without backend
+            HunspellCachedStemFilterFactory factory = factory("cacheScope", "core", "backend", "remote",
+                    "backend.port", Integer.toString(server.getPort()));
+            RemoteCache backend = (RemoteCache) factory.getCache().getBackend();
+            try {
+                assertNotNull(backend);
+                assertEquals(Arrays.asList("walk", "books", "+book"),
+                        HunspellCachedStemFilterTest.analyze(factory.create(tokenizer("walked books"))));
+                long deadline = System.currentTimeMillis() + 5000;
+                while (server.size() < 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                // written behind, queued until connected
+                assertEquals(2, server.size());
+            } finally {
+                backend.close();
+            }
+        }
+    }
+
+    @Test
+    public void testQueryPartition() throws Exception {
+        HunspellCachedStemFilterFactory query = factory("cacheScope", "core", "cachePartition", "query", "maxQuery", "100");
+        HunspellCachedStemFilterTest.analyze(query.create(tokenizer("walked books walked")));
+        assertEquals(2, query.getCache().getSizeQuery());
+        assertEquals(100, query.getCache().getMaximumSizeQuery());
+
+        HunspellCachedStemFilterFactory index = factory("cacheScope", "core");
+        HunspellCachedStemFilterTest.analyze(index.create(tokenizer("walked books")));
+        assertEquals(0, index.getCache().getSizeQuery());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownBackend() throws Exception {
+        factory("backend", "memcached");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCacheScope() throws Exception {
+        factory("cacheScope", "cluster");
+    }
+}
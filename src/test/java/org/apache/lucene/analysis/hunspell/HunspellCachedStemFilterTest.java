@@ -0,0 +1,374 @@
+package org.apache.lucene.analysis.hunspell;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.core.WhitespaceTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.hunspell.cache.CacheConfig;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.analysis.tokenattributes.TypeAttribute;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.CharsRef;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.Assert.*;
+
+public class HunspellCachedStemFilterTest {
+
+    private Dictionary dictionary;
+
+    @Before
+    public void setUp() throws Exception {
+        StemmerCachedWrapper.stemsCaches.clear();
+        this.dictionary = loadDictionary(false);
+    }
+
+    static Dictionary loadDictionary(boolean ignoreCase) throws Exception {
+        return loadDictionary("test.aff", ignoreCase);
+    }
+
+    static Dictionary loadDictionary(String affixFile, boolean ignoreCase) throws Exception {
+        try (InputStream affix = HunspellCachedStemFilterTest.class.getResourceAsStream(affixFile);
+             InputStream dic = HunspellCachedStemFilterTest.class.getResourceAsStream("test.dic")) {
+            return new Dictionary(new RAMDirectory(), "test", affix, Collections.singletonList(dic), ignoreCase);
+        }
+    }
+
+    static List<String> analyze(TokenStream stream) throws Exception {
+        List<String> tokens = new ArrayList<>();
+        CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+        PositionIncrementAttribute posIncAtt = stream.addAttribute(PositionIncrementAttribute.class);
+        stream.reset();
+        while (stream.incrementToken()) {
+            tokens.add((posIncAtt.getPositionIncrement() == 0 ? "+" : "") + termAtt.toString());
+        }
+        stream.end();
+        stream.close();
+        return tokens;
+    }
+
+    private TokenStream filter(String text, boolean longestOnly) {
+        WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader(text));
+        return new HunspellCachedStemFilter(tokenizer, dictionary, "test", true, longestOnly);
+    }
+
+    @Test
+    public void testStems() throws Exception {
+        List<String> expected = Arrays.asList("walk", "walk", "books", "+book", "xyz");
+        // second pass is served from the cache
+        assertEquals(expected, analyze(filter("walks walked books xyz", false)));
+        assertEquals(expected, analyze(filter("walks walked books xyz", false)));
+    }
+
+    @Test
+    public void testLongestOnly() throws Exception {
+        assertEquals(Arrays.asList("books", "talk"), analyze(filter("books talks", true)));
+        assertEquals(Arrays.asList("books", "talk"), analyze(filter("books talks", true)));
+    }
+
+    @Test
+    public void testStackedStemsKeepAttributes() throws Exception {
+        WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader("books walks books"));
+        TokenStream stream = new HunspellCachedStemFilter(tokenizer, dictionary, "test", true, false);
+        CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+        OffsetAttribute offsetAtt = stream.addAttribute(OffsetAttribute.class);
+        // the filter is reused, attribute added before the second use is restored too
+        for (int pass = 0; pass < 2; pass++) {
+            List<String> tokens = new ArrayList<>();
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(termAtt + ":" + offsetAtt.startOffset() + "-" + offsetAtt.endOffset());
+            }
+            stream.end();
+            stream.close();
+            assertEquals(Arrays.asList("books:0-5", "book:0-5", "walk:6-11", "books:12-17", "book:12-17"), tokens);
+            tokenizer.setReader(new StringReader("books walks books"));
+            stream.addAttribute(TypeAttribute.class);
+        }
+    }
+
+    @Test
+    public void testCachedStemsAreShared() throws Exception {
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), "test");
+        char[] buffer = "books".toCharArray();
+        List<?> first = new ArrayList<>(wrapper.uniqueStems(buffer, buffer.length));
+        List<?> second = wrapper.uniqueStems(buffer, buffer.length);
+        assertEquals(2, second.size());
+        for (int i = 0; i < second.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testOneCacheEntryServesAllLookups() throws Exception {
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), "test");
+        char[] buffer = "books".toCharArray();
+        Stemmer stemmer = new Stemmer(dictionary);
+        assertEquals(stemmer.stem(buffer, buffer.length), new ArrayList<>(wrapper.stem(buffer, buffer.length)));
+        assertEquals(stemmer.uniqueStems(buffer, buffer.length), new ArrayList<>(wrapper.uniqueStems(buffer, buffer.length)));
+        assertEquals("books", wrapper.longestStem(buffer, buffer.length).toString());
+        char[] unknown = "xyz".toCharArray();
+        assertNull(wrapper.longestStem(unknown, unknown.length));
+        CacheMap cacheMap = StemmerCachedWrapper.getStemCache("test");
+        wrapper.publishStatistics();
+        assertEquals(2, cacheMap.getMisses());
+        assertEquals(2, cacheMap.getHitsL0());
+    }
+
+    @Test
+    public void testFrontCache() throws Exception {
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), "test");
+        wrapper.setFrontCacheSize(1);
+        char[] books = "books".toCharArray();
+        char[] walks = "walks".toCharArray();
+        CacheMap cacheMap = StemmerCachedWrapper.getStemCache("test");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, wrapper.stem(books, books.length).size());
+        }
+        wrapper.publishStatistics();
+        assertEquals(1, cacheMap.getMisses());
+        assertEquals(2, cacheMap.getHitsL0());
+        assertEquals(0, cacheMap.getHitsL1());
+        // the only slot is taken by each other term, the shared cache serves them
+        assertEquals("walk", wrapper.stem(walks, walks.length).get(0).toString());
+        assertEquals("books", wrapper.longestStem(books, books.length).toString());
+        wrapper.publishStatistics();
+        assertEquals(2, cacheMap.getHitsL0());
+        assertEquals(1, cacheMap.getHitsL1());
+        // terms without stems are cached too
+        char[] unknown = "xyz".toCharArray();
+        assertTrue(wrapper.stem(unknown, unknown.length).isEmpty());
+        assertTrue(wrapper.stem(unknown, unknown.length).isEmpty());
+        wrapper.publishStatistics();
+        assertEquals(3, cacheMap.getHitsL0());
+    }
+
+    @Test
+    public void testFrontCacheHitsReachSketch() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), cacheMap);
+        char[] walked = "walked".toCharArray();
+        int hashCode = new TermKey("walked").hashCode();
+        wrapper.stem(walked, walked.length);
+        int missed = cacheMap.getSketch().frequency(hashCode);
+        for (int i = 0; i < 10; i++) {
+            wrapper.stem(walked, walked.length);
+        }
+        wrapper.publishStatistics();
+        assertEquals(10, cacheMap.getHitsL0());
+        assertEquals(missed + 10, cacheMap.getSketch().frequency(hashCode));
+    }
+
+    @Test
+    public void testKeyFolding() throws Exception {
+        Dictionary ignoringCase = loadDictionary(true);
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(ignoringCase), "test-folded");
+        wrapper.setKeyFolding(ignoringCase);
+        Stemmer stemmer = new Stemmer(ignoringCase);
+        for (String term : Arrays.asList("Books", "BOOKS", "books", "Xyz", "XYZ")) {
+            char[] buffer = term.toCharArray();
+            assertEquals(term, stemmer.stem(buffer, buffer.length), new ArrayList<>(wrapper.stem(buffer, buffer.length)));
+        }
+        for (List<CharsRef> stems : wrapper.stemAll(Arrays.asList("bOOKS", "Books"))) {
+            assertEquals(Arrays.asList("books", "book"), strings(stems));
+        }
+        CacheMap cacheMap = StemmerCachedWrapper.getStemCache("test-folded");
+        assertEquals(2, cacheMap.getMisses());
+        assertEquals(1, cacheMap.getSizeL1());
+    }
+
+    @Test
+    public void testKeyFoldingCaseSensitive() throws Exception {
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), "test-folded");
+        wrapper.setKeyFolding(dictionary);
+        wrapper.setFrontCacheSize(0);
+        Stemmer stemmer = new Stemmer(dictionary);
+        List<String> terms = Arrays.asList("Praha", "PRAHA", "praha", "Books", "BOOKS", "books", "Walks", "WALKED");
+        CacheMap cacheMap = StemmerCachedWrapper.getStemCache("test-folded");
+        for (String term : terms) {
+            char[] buffer = term.toCharArray();
+            assertEquals(term, stemmer.stem(buffer, buffer.length), new ArrayList<>(wrapper.stem(buffer, buffer.length)));
+            if (term.equals("praha")) {
+                // "PRAHA" stems only its own form, "praha" is found under the lower case component of "Praha"
+                assertEquals(3, cacheMap.getMisses());
+            }
+        }
+        List<List<CharsRef>> batch = wrapper.stemAll(terms);
+        for (int i = 0; i < terms.size(); i++) {
+            char[] buffer = terms.get(i).toCharArray();
+            assertEquals(terms.get(i), stemmer.stem(buffer, buffer.length), new ArrayList<>(batch.get(i)));
+        }
+    }
+
+    @Test
+    public void testBatchFilterProducesSameTokens() throws Exception {
+        String text = "walks walked books xyz walks talks books";
+        for (boolean longestOnly : new boolean[] { false, true }) {
+            for (int batchSize : new int[] { 1, 3, 100 }) {
+                WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+                tokenizer.setReader(new StringReader(text));
+                StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), "test");
+                assertEquals(analyze(filter(text, longestOnly)),
+                        analyze(new HunspellCachedBatchStemFilter(tokenizer, wrapper, true, longestOnly, batchSize)));
+            }
+        }
+    }
+
+    @Test
+    public void testBatchLooksUpDistinctTerms() throws Exception {
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), "test");
+        // lookups of the shared cache are counted
+        wrapper.setFrontCacheSize(0);
+        List<List<CharsRef>> stems = wrapper.uniqueStemsAll(Arrays.asList("books", "walks", "books", "xyz", "books"));
+        assertEquals(5, stems.size());
+        assertSame(stems.get(0).get(0), stems.get(2).get(0));
+        assertEquals(2, stems.get(0).size());
+        assertTrue(stems.get(3).isEmpty());
+        CacheMap cacheMap = StemmerCachedWrapper.getStemCache("test");
+        assertEquals(3, cacheMap.getMisses());
+        assertEquals(0, cacheMap.getHitsL1());
+        // the next batch is served from the cache
+        wrapper.uniqueStemsAll(Arrays.asList("walks", "walks"));
+        assertEquals(3, cacheMap.getMisses());
+        assertEquals(1, cacheMap.getHitsL1());
+    }
+
+    @Test
+    public void testStemTable() throws Exception {
+        StemTable compiled = StemTable.compile(dictionary, "test", Arrays.asList("walks", "walked", "books", "xyz"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        compiled.write(bytes);
+        StemTable table = StemTable.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals("test", table.getDictionaryKey());
+
+        Stemmer stemmer = new Stemmer(dictionary);
+        for (String word : Arrays.asList("walk", "walks", "walked", "books", "Praha", "xyz")) {
+            char[] chars = word.toCharArray();
+            assertEquals(word, strings(stemmer.stem(chars, chars.length)), strings(table.stem(chars, chars.length)));
+        }
+        // neither a root nor in the word list
+        assertNull(table.stem("talks".toCharArray(), 5));
+
+        // stemmer of the other dictionary does not know past tense, table does
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(loadDictionary("test-other.aff", false)), "test-table");
+        wrapper.setStemTable(table);
+        WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+        tokenizer.setReader(new StringReader("walked talked"));
+        assertEquals(Arrays.asList("walk", "talked"), analyze(new HunspellCachedStemFilter(tokenizer, wrapper, true, false)));
+    }
+
+    @Test
+    public void testSlowStemmingFallsBackToUnstemmedTerm() throws Exception {
+        CountDownLatch slow = new CountDownLatch(1);
+        // pool threads start working only when the latch is released
+        ThreadFactory stalled = r -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    slow.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                r.run();
+            });
+            thread.setDaemon(true);
+            return thread;
+        };
+        CacheMap cacheMap = new CacheMap();
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), cacheMap);
+        try (StemExecutor executor = new StemExecutor(dictionary, 1, 10, 20, stalled)) {
+            wrapper.setStemExecutor(executor);
+            WhitespaceTokenizer tokenizer = new WhitespaceTokenizer();
+            tokenizer.setReader(new StringReader("walked"));
+            assertEquals(Arrays.asList("walked"), analyze(new HunspellCachedStemFilter(tokenizer, wrapper, true, false)));
+            assertEquals(1, cacheMap.getStemTimeouts());
+
+            // computation goes on and fills the cache
+            slow.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!cacheMap.isPresent("walked") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            char[] walked = "walked".toCharArray();
+            assertEquals(Arrays.asList("walk"), strings(wrapper.stem(walked, walked.length)));
+            assertEquals(1, cacheMap.getStats().getLoads());
+        }
+    }
+
+    @Test
+    public void testRepeatedSlowTermIsStemmedOnce() throws Exception {
+        CountDownLatch slow = new CountDownLatch(1);
+        ThreadFactory stalled = r -> {
+            Thread thread = new Thread(() -> {
+                try {
+                    slow.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                r.run();
+            });
+            thread.setDaemon(true);
+            return thread;
+        };
+        CacheMap cacheMap = new CacheMap();
+        StemmerCachedWrapper wrapper = new StemmerCachedWrapper(new Stemmer(dictionary), cacheMap);
+        wrapper.setFrontCacheSize(0);
+        char[] walked = "walked".toCharArray();
+        try (StemExecutor executor = new StemExecutor(dictionary, 1, 1, 20, stalled)) {
+            wrapper.setStemExecutor(executor);
+            // occurrences of the running term neither take the queue nor wait for it beyond the budget
+            for (int i = 0; i < 5; i++) {
+                long start = System.nanoTime();
+                assertTrue(wrapper.stem(walked, walked.length).isEmpty());
+                assertTrue(System.nanoTime() - start < 1_000_000_000L);
+            }
+            assertEquals(5, cacheMap.getStemTimeouts());
+
+            slow.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!cacheMap.isPresent("walked") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(Arrays.asList("walk"), strings(wrapper.stem(walked, walked.length)));
+            assertEquals(1, cacheMap.getStats().getLoads());
+        }
+    }
+
+    @Test
+    public void testOffHeapLevel() throws Exception {
+        CacheConfig config = new CacheConfig();
+        config.setOffHeapBytes(64);
+        assertNull(StemmerCachedWrapper.createCacheMap("test-small", StemmerCachedWrapper.STEMS, config, false).getThirdLevel());
+
+        Path dir = Files.createTempDirectory("offheap");
+        config.setOffHeapBytes(1 << 16);
+        config.setOffHeapFile(dir.resolve("l3").toString());
+        assertNotNull(StemmerCachedWrapper.createCacheMap("test-file", StemmerCachedWrapper.STEMS, config, true).getThirdLevel());
+        assertTrue(Files.exists(dir.resolve("l3.test-file." + StemmerCachedWrapper.STEMS)));
+    }
+
+    private static List<String> strings(List<CharsRef> stems) {
+        List<String> strings = new ArrayList<>();
+        for (CharsRef stem : stems) {
+            strings.add(stem.toString());
+        }
+        return strings;
+    }
+}
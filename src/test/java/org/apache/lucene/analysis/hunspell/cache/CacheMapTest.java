@@ -1,4 +1,476 @@
 package org.apache.lucene.analysis.hunspell.cache;
 
+import org.apache.lucene.analysis.hunspell.cache.internal.CacheMaintenance;
+import org.apache.lucene.analysis.hunspell.cache.internal.NegativeCache;
+import org.apache.lucene.util.CharsRef;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
 public class CacheMapTest {
+
+    @Test
+    public void testPushAndGet() {
+        CacheMap cacheMap = new CacheMap();
+        assertNull(cacheMap.getItem("kočky"));
+        cacheMap.pushItem("kočky", new CacheItem("kočky", "kočka"));
+        assertTrue(cacheMap.isPresent("kočky"));
+        assertEquals("kočka", cacheMap.getItem("kočky").getTransformedTerms().get(0));
+    }
+
+    @Test
+    public void testPromotion() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveThreshold(3);
+        cacheMap.pushItem("psi", new CacheItem("psi", "pes"));
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cacheMap.getItem("psi"));
+        }
+        assertFalse(cacheMap.getFirstLevel().isPresent("psi"));
+        assertTrue(cacheMap.getSecondLevel().isPresent("psi"));
+        assertNotNull(cacheMap.getItem("psi"));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveThreshold(5);
+        final int threads = 8;
+        final int terms = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int round = 0; round < 10; round++) {
+                        for (int i = 0; i < terms; i++) {
+                            String term = "term" + i;
+                            CacheItem item = cacheMap.getItem(term);
+                            if (item == null) {
+                                cacheMap.pushItem(term, new CacheItem(term, "stem" + i));
+                            } else {
+                                assertEquals("stem" + i, item.getTransformedTerms().get(0));
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < terms; i++) {
+            assertTrue(cacheMap.isPresent("term" + i));
+        }
+    }
+
+    @Test
+    public void testAtomicCounter() throws Exception {
+        final CacheItem item = new CacheItem("a", "a");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    item.increment();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, item.getCounter());
+    }
+
+    @Test
+    public void testBoundedFirstLevel() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.setMaximumSize(100, 10);
+        for (int i = 0; i < 1000; i++) {
+            cacheMap.pushItem("term" + i, new CacheItem("term" + i, "stem" + i));
+        }
+        // pushing threads leave trimming to maintenance
+        cacheMap.maintain();
+        assertEquals(100, cacheMap.getFirstLevel().size());
+        // oldest entries are gone, the newest stay
+        assertNull(cacheMap.getItem("term0"));
+        assertNotNull(cacheMap.getItem("term999"));
+    }
+
+    @Test
+    public void testFrequentItemsSurviveInSecondLevel() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveThreshold(2);
+        cacheMap.setMaximumSize(1000, 10);
+        // hot terms are requested many times and get promoted
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10; i++) {
+                lookupOrPush(cacheMap, "hot" + i);
+            }
+        }
+        assertEquals(10, cacheMap.getSecondLevel().size());
+        // a flood of rarely used terms which just pass the promotion threshold
+        for (int i = 0; i < 500; i++) {
+            for (int round = 0; round < 3; round++) {
+                lookupOrPush(cacheMap, "cold" + i);
+            }
+        }
+        assertEquals(10, cacheMap.getSecondLevel().size());
+        int hot = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cacheMap.getSecondLevel().isPresent("hot" + i)) hot++;
+        }
+        assertTrue("hot entries evicted: " + hot, hot >= 8);
+    }
+
+    @Test
+    public void testGetOrComputeCoalescesMisses() throws Exception {
+        final CacheMap cacheMap = new CacheMap();
+        final AtomicInteger computations = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CacheItem>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    char[] buffer = "domů".toCharArray();
+                    return cacheMap.getOrCompute(new TermKey().set(buffer, 0, buffer.length), key -> {
+                        computations.incrementAndGet();
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        return new CacheItem(key, new CharsRef[] { new CharsRef("dům") });
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<CacheItem> f : futures) {
+                assertEquals("dům", f.get(60, TimeUnit.SECONDS).getStems().get(0).toString());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, computations.get());
+        assertTrue(cacheMap.isPresent("domů"));
+    }
+
+    @Test
+    public void testGetOrComputeDoesNotCacheNull() {
+        CacheMap cacheMap = new CacheMap();
+        assertNull(cacheMap.getOrCompute(new TermKey("xyz"), key -> null));
+        assertFalse(cacheMap.isPresent("xyz"));
+    }
+
+    private static void lookupOrPush(CacheMap cacheMap, String term) {
+        if (cacheMap.getItem(term) == null) {
+            cacheMap.pushItem(term, new CacheItem(term, term));
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveThreshold(2);
+        TermKey key = new TermKey("psi");
+        cacheMap.getOrCompute(key, k -> new CacheItem(k, new CharsRef[] { new CharsRef("pes") }));
+        cacheMap.getOrCompute(key, k -> fail());
+        cacheMap.getOrCompute(key, k -> fail());
+        cacheMap.getOrCompute(key, k -> fail());
+
+        CacheStats stats = cacheMap.getStats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getLoads());
+        // second hit promotes the item, the third one finds it in L2
+        assertEquals(2, stats.getHits(1));
+        assertEquals(1, stats.getHits(2));
+        assertEquals(1, stats.getPromotions());
+        assertEquals(0.75, cacheMap.getHitRatio(), 0.0001);
+        assertEquals(1, cacheMap.getSizeL2());
+        assertTrue(cacheMap.getEstimatedBytes() > 0);
+        assertEquals(1, Arrays.stream(cacheMap.getMissLatencyHistogram()).sum());
+    }
+
+    private static CacheItem fail() {
+        throw new AssertionError("Item must be cached");
+    }
+
+    @Test
+    public void testEvictionsAreCounted() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.setMaximumSize(10, 10);
+        for (int i = 0; i < 25; i++) {
+            cacheMap.pushItem("term" + i, new CacheItem("term" + i, "stem" + i));
+        }
+        cacheMap.maintain();
+        assertEquals(15, cacheMap.getEvictions());
+    }
+
+    @Test
+    public void testConfigureResizesRunningCache() {
+        CacheMap cacheMap = new CacheMap();
+        for (int i = 0; i < 100; i++) {
+            cacheMap.pushItem("term" + i, new CacheItem("term" + i, "stem" + i));
+        }
+        CacheConfig config = new CacheConfig();
+        config.setMaximumSizeL1(30);
+        config.setEvictionPolicy(EvictionPolicy.FIFO);
+        cacheMap.configure(config);
+        assertEquals(30, cacheMap.getSizeL1());
+        assertEquals(EvictionPolicy.FIFO, cacheMap.getEvictionPolicy());
+
+        // through JMX view
+        cacheMap.setMaximumSizeL1(10);
+        assertEquals(10, cacheMap.getSizeL1());
+    }
+
+    @Test
+    public void testByteBudget() {
+        CacheMap cacheMap = new CacheMap();
+        CacheItem sample = new CacheItem("term0", "stem0");
+        cacheMap.getFirstLevel().setMaximumBytes(20 * sample.ramBytesUsed());
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            cacheMap.getOrCompute(new TermKey("term" + i), k -> new CacheItem(k, new CharsRef[] { new CharsRef("stem" + n) }));
+        }
+        cacheMap.maintain();
+        assertTrue(cacheMap.getSizeL1() <= 21);
+        assertTrue(cacheMap.getSizeL1() >= 15);
+    }
+
+    @Test
+    public void testExpiredEntriesAreSweptByMaintenance() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveInterval(60000);
+        for (int i = 0; i < 100; i++) {
+            cacheMap.pushItem("old" + i, new CacheItem("old" + i, "stem"));
+        }
+        // entries are older than the current tick
+        Thread.sleep(3 * CacheMaintenance.TICK_MILLIS);
+        cacheMap.getFirstLevel().setSurviveInterval(1);
+        // starts the sweep, or continues one started by the maintenance thread
+        cacheMap.maintain();
+        assertFalse(cacheMap.getFirstLevel().isPresent("old0"));
+        assertEquals(0, cacheMap.getFirstLevel().size());
+        assertEquals(100, cacheMap.getExpirations());
+        assertEquals(0, cacheMap.getClears());
+    }
+
+    @Test
+    public void testEntriesExpireIndividually() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveInterval(5 * CacheMaintenance.TICK_MILLIS);
+        cacheMap.pushItem("old", new CacheItem("old", "stem"));
+        Thread.sleep(4 * CacheMaintenance.TICK_MILLIS);
+        cacheMap.pushItem("new", new CacheItem("new", "stem"));
+        Thread.sleep(3 * CacheMaintenance.TICK_MILLIS);
+        // hits do not extend the time to live
+        assertNull(cacheMap.getItem("old"));
+        assertNotNull(cacheMap.getItem("new"));
+        cacheMap.maintain();
+        assertFalse(cacheMap.getFirstLevel().isPresent("old"));
+        assertTrue(cacheMap.getFirstLevel().isPresent("new"));
+    }
+
+    @Test
+    public void testExpiredEntryIsComputedAgain() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveInterval(60000);
+        cacheMap.pushItem("old", new CacheItem("old", "stale"));
+        Thread.sleep(3 * CacheMaintenance.TICK_MILLIS);
+        // expired, the sweep of the maintenance thread has not reached it yet
+        cacheMap.getFirstLevel().setSurviveInterval(1);
+        AtomicInteger loads = new AtomicInteger();
+        CacheItem item = cacheMap.getOrCompute(new TermKey("old"), k -> {
+            loads.incrementAndGet();
+            return new CacheItem(k.toString(), "fresh");
+        });
+        assertEquals(1, loads.get());
+        assertEquals("fresh", item.getStem(0).toString());
+    }
+
+    @Test
+    public void testIdleEntriesExpire() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setIdleInterval(4 * CacheMaintenance.TICK_MILLIS);
+        cacheMap.pushItem("idle", new CacheItem("idle", "stem"));
+        cacheMap.pushItem("used", new CacheItem("used", "stem"));
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(2 * CacheMaintenance.TICK_MILLIS);
+            assertNotNull(cacheMap.getItem("used"));
+        }
+        assertNull(cacheMap.getItem("idle"));
+        assertNotNull(cacheMap.getItem("used"));
+    }
+
+    @Test
+    public void testPinnedEntryKeepsAccessTick() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setIdleInterval(4 * CacheMaintenance.TICK_MILLIS);
+        cacheMap.pushItem("hot", new CacheItem("hot", "stem"));
+        Thread.sleep(3 * CacheMaintenance.TICK_MILLIS);
+        // the hit pins the item, pinning does not move its access tick back to the write tick
+        assertNotNull(cacheMap.getItem(new TermKey("hot"), CachePartition.QUERY));
+        assertEquals(1, cacheMap.getSizeQuery());
+        Thread.sleep(2 * CacheMaintenance.TICK_MILLIS);
+        assertNotNull(cacheMap.getFirstLevel().peekItem(new TermKey("hot")));
+    }
+
+    @Test
+    public void testHitCountersAge() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveThreshold(8);
+        cacheMap.getFirstLevel().setAgingInterval(2 * CacheMaintenance.TICK_MILLIS);
+        cacheMap.pushItem("term", new CacheItem("term", "stem"));
+        for (int i = 0; i < 6; i++) {
+            assertNotNull(cacheMap.getItem("term"));
+        }
+        // counter is halved at least twice, so hits of the past do not promote the term
+        Thread.sleep(5 * CacheMaintenance.TICK_MILLIS);
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(cacheMap.getItem("term"));
+        }
+        assertTrue(cacheMap.getFirstLevel().isPresent("term"));
+        assertFalse(cacheMap.getSecondLevel().isPresent("term"));
+    }
+
+    @Test
+    public void testDecayCounter() {
+        CacheItem item = new CacheItem("term", "stem");
+        for (int i = 0; i < 12; i++) {
+            item.increment();
+        }
+        item.decayCounter(1);
+        assertEquals(6, item.getCounter());
+        item.decayCounter(2);
+        assertEquals(1, item.getCounter());
+        item.decayCounter(40);
+        assertEquals(0, item.getCounter());
+    }
+
+    @Test
+    public void testTermsWithoutStemsAreKeptApart() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.setMaximumSizeNegative(1000);
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            CacheItem item = cacheMap.getOrCompute(new TermKey("xyz"), k -> {
+                loads.incrementAndGet();
+                return new CacheItem(k, new CharsRef[0]);
+            });
+            assertTrue(item.getStems().isEmpty());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(0, cacheMap.getSizeL1());
+        assertEquals(1, cacheMap.getSizeNegative());
+        assertEquals(2, cacheMap.getNegativeHits());
+        assertSame(CacheMap.NO_STEMS, cacheMap.getItem("xyz"));
+        // terms with stems are cached as before
+        cacheMap.getOrCompute(new TermKey("books"), k -> new CacheItem(k, new CharsRef[] { new CharsRef("book") }));
+        assertEquals(1, cacheMap.getSizeL1());
+        assertNull(cacheMap.getItem("walks"));
+    }
+
+    @Test
+    public void testNegativeCacheIsBounded() {
+        NegativeCache negativeCache = new NegativeCache(64);
+        assertEquals(64, negativeCache.capacity());
+        for (int i = 0; i < 10000; i++) {
+            negativeCache.add(new TermKey("unknown" + i));
+            assertTrue(negativeCache.contains(new TermKey("unknown" + i)));
+        }
+        assertTrue(negativeCache.size() <= 64);
+        int remembered = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (negativeCache.contains(new TermKey("unknown" + i))) remembered++;
+        }
+        assertTrue(remembered <= 64);
+        assertFalse(negativeCache.contains(new TermKey("known")));
+    }
+
+    @Test
+    public void testStemsAreInterned() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getOrCompute(new TermKey("walks"), k -> CacheItem.copyOf(k, Collections.singletonList(new CharsRef("walk")), cacheMap.getStemPool()));
+        cacheMap.getOrCompute(new TermKey("walked"), k -> CacheItem.copyOf(k, Collections.singletonList(new CharsRef("walk")), cacheMap.getStemPool()));
+        CacheItem walks = cacheMap.getItem("walks");
+        CacheItem walked = cacheMap.getItem("walked");
+        assertEquals("walk", walks.getStem(0).toString());
+        assertSame(walks.getStem(0), walked.getStem(0));
+        assertEquals(1, cacheMap.getStemPool().size());
+        assertTrue(cacheMap.getEstimatedBytes() >= cacheMap.getStemPool().ramBytesUsed());
+    }
+
+    @Test
+    public void testUniqueStemsIgnoreCase() {
+        CharsRef[] stems = {new CharsRef("Brno"), new CharsRef("brno"), new CharsRef("brnět")};
+        CacheMap sensitive = new CacheMap();
+        assertEquals(3, new CacheItem(new TermKey("Brna"), stems, sensitive.getStemPool()).getUniqueStemCount());
+
+        CacheConfig config = new CacheConfig();
+        config.setIgnoreCase(true);
+        CacheMap insensitive = new CacheMap();
+        insensitive.configure(config);
+        CacheItem item = new CacheItem(new TermKey("Brna"), stems, insensitive.getStemPool());
+        assertEquals(Arrays.asList(new CharsRef("Brno"), new CharsRef("brnět")), item.getUniqueStems());
+        assertEquals(3, item.getStemCount());
+    }
+
+    @Test
+    public void testQueryItemsSurviveIndexing() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.setMaximumSize(10, 10);
+        cacheMap.setMaximumSizeQuery(5);
+        for (int i = 0; i < 3; i++) {
+            cacheMap.getOrCompute(new TermKey("query" + i), CachePartition.QUERY, k -> new CacheItem(k.toString(), "stem"));
+        }
+        assertEquals(3, cacheMap.getSizeQuery());
+        // reindex floods the shared levels
+        for (int i = 0; i < 1000; i++) {
+            cacheMap.getOrCompute(new TermKey("index" + i), CachePartition.INDEX, k -> new CacheItem(k.toString(), "stem"));
+        }
+        cacheMap.maintain();
+        assertEquals(3, cacheMap.getSizeQuery());
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(cacheMap.getItem(new TermKey("query" + i), CachePartition.QUERY));
+        }
+        assertEquals(3, cacheMap.getQueryHits());
+        // indexing reads pinned items, it does not pin its own
+        assertNotNull(cacheMap.getItem(new TermKey("query0"), CachePartition.INDEX));
+        assertEquals(3, cacheMap.getSizeQuery());
+    }
+
+    @Test
+    public void testQueryQuota() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.setMaximumSizeQuery(4);
+        for (int i = 0; i < 100; i++) {
+            cacheMap.getOrCompute(new TermKey("query" + i), CachePartition.QUERY, k -> new CacheItem(k.toString(), "stem"));
+        }
+        cacheMap.maintain();
+        assertTrue(cacheMap.getSizeQuery() <= 4);
+        cacheMap.setMaximumSizeQuery(0);
+        assertEquals(0, cacheMap.getSizeQuery());
+        cacheMap.getItem(new TermKey("query99"), CachePartition.QUERY);
+        assertEquals(0, cacheMap.getSizeQuery());
+    }
 }
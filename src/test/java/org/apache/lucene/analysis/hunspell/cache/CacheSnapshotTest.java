@@ -0,0 +1,74 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class CacheSnapshotTest {
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveThreshold(1);
+        cacheMap.pushItem("hradech", new CacheItem("hradech", "hrad", "hradec"));
+        cacheMap.getItem("hradech");
+        cacheMap.pushItem("xyz", new CacheItem("xyz"));
+        assertTrue(cacheMap.getSecondLevel().isPresent("hradech"));
+
+        Path dir = Files.createTempDirectory("snapshot");
+        Path file = dir.resolve("test.snapshot");
+        try {
+            assertEquals(2, CacheSnapshot.write(cacheMap, file, "hash1"));
+
+            CacheMap loaded = new CacheMap();
+            assertEquals(2, CacheSnapshot.read(file, "hash1", loaded));
+            assertTrue(loaded.getSecondLevel().isPresent("hradech"));
+            assertTrue(loaded.getFirstLevel().isPresent("xyz"));
+            assertEquals("hradec", loaded.getItem("hradech").getTransformedTerms().get(1));
+
+            // entries mapped to null are skipped
+            CacheMap mapped = new CacheMap();
+            assertEquals(1, CacheSnapshot.read(file, "hash1", mapped, key -> key.toString().equals("xyz") ? null : key));
+            assertTrue(mapped.getSecondLevel().isPresent("hradech"));
+            assertFalse(mapped.isPresent("xyz"));
+
+            // another dictionary
+            CacheMap other = new CacheMap();
+            assertEquals(-1, CacheSnapshot.read(file, "hash2", other));
+            assertFalse(other.isPresent("hradech"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testMissingSnapshot() throws Exception {
+        Path dir = Files.createTempDirectory("snapshot");
+        try {
+            assertEquals(-1, CacheSnapshot.read(dir.resolve("none"), "hash", new CacheMap()));
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testRegistrationIsReplaced() throws Exception {
+        Path file = Files.createTempDirectory("snapshot").resolve("reload.snapshot");
+        CacheMap before = new CacheMap();
+        CacheMap reloaded = new CacheMap();
+        CacheSnapshot.register(before, file, "hash", 0);
+        // e.g. reloaded core
+        CacheSnapshot.register(reloaded, file, "hash", 0);
+        assertSame(reloaded, CacheSnapshot.registered(file));
+        // the previous cache is not held any more
+        CacheSnapshot.unregister(before);
+        assertSame(reloaded, CacheSnapshot.registered(file));
+        CacheSnapshot.unregister(reloaded);
+        assertNull(CacheSnapshot.registered(file));
+        Files.deleteIfExists(file.getParent());
+    }
+}
@@ -0,0 +1,77 @@
+package org.apache.lucene.analysis.hunspell.cache;
+
+import org.apache.lucene.analysis.hunspell.cache.internal.ThirdLevel;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class ThirdLevelTest {
+
+    @Test
+    public void testPushAndGet() {
+        ThirdLevel level = ThirdLevel.allocateDirect(64 * 1024);
+        level.pushItem("hradech", new CacheItem("hradech", "hrad", "hradec"));
+        level.pushItem("xyz", new CacheItem("xyz"));
+        assertEquals(2, level.size());
+        assertEquals(Arrays.asList("hrad", "hradec"), level.getItem("hradech").getTransformedTerms());
+        assertTrue(level.getItem("xyz").getStems().isEmpty());
+        assertNull(level.getItem("hrady"));
+    }
+
+    @Test
+    public void testEvictsOldestWhenFull() {
+        ThirdLevel level = ThirdLevel.allocateDirect(4 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            // records of varying size wrap the ring at different positions
+            String stem = "stem" + i + (i % 7 == 0 ? "-with-a-longer-suffix" : "");
+            level.pushItem("term" + i, new CacheItem("term" + i, stem));
+            if (i > 100) {
+                // only the oldest entries are evicted, the newest ones stay
+                int size = level.size();
+                assertTrue(size > 10);
+                for (int j = 0; j < 300; j++) {
+                    assertEquals("term" + (i - j), j < size, level.isPresent("term" + (i - j)));
+                }
+            }
+        }
+        assertEquals("stem999", level.getItem("term999").getTransformedTerms().get(0));
+        assertTrue(level.getUsedBytes() <= level.getCapacity());
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        Path file = Files.createTempFile("hunspell", ".l3");
+        try {
+            ThirdLevel level = ThirdLevel.map(file, 64 * 1024);
+            level.pushItem("města", new CacheItem("města", "město"));
+            assertEquals("město", level.getItem("města").getTransformedTerms().get(0));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testDemotionFromSecondLevel() {
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.getFirstLevel().setSurviveThreshold(1);
+        cacheMap.setMaximumSize(100, 2);
+        cacheMap.setThirdLevel(ThirdLevel.allocateDirect(64 * 1024));
+        for (int i = 0; i < 10; i++) {
+            String term = "term" + i;
+            cacheMap.pushItem(term, new CacheItem(term, "stem" + i));
+            // every lookup promotes; repeated lookups make newer terms more frequent than the older ones
+            for (int j = 0; j <= i; j++) {
+                cacheMap.getItem(term);
+            }
+        }
+        assertEquals(2, cacheMap.getSecondLevel().size());
+        assertTrue(cacheMap.getThirdLevel().size() > 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("stem" + i, cacheMap.getItem("term" + i).getTransformedTerms().get(0));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.apache.lucene.analysis.hunspell.cache.remote;
+
+import org.apache.lucene.analysis.hunspell.cache.CacheBackend;
+import org.apache.lucene.analysis.hunspell.cache.CacheBackendProvider;
+import org.apache.lucene.analysis.hunspell.cache.CacheItem;
+import org.apache.lucene.analysis.hunspell.cache.CacheMap;
+import org.apache.lucene.analysis.hunspell.cache.TermKey;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class RemoteCacheTest {
+
+    @Test
+    public void testSharedBetweenNodes() throws Exception {
+        try (StemCacheServer server = new StemCacheServer(0, 1000)) {
+            server.start();
+            CacheMap nodeA = node(server.getPort());
+            CacheMap nodeB = node(server.getPort());
+            try {
+                AtomicInteger computed = new AtomicInteger();
+                CacheItem item = nodeA.getOrCompute(new TermKey("kočky"), key -> {
+                    computed.incrementAndGet();
+                    return new CacheItem("kočky", "kočka");
+                });
+                assertEquals("kočka", item.getStem(0).toString());
+                await(() -> server.size() == 1);
+
+                CacheItem shared = nodeB.getOrCompute(new TermKey("kočky"), key -> {
+                    computed.incrementAndGet();
+                    return new CacheItem("kočky", "kočka");
+                });
+                assertEquals(1, computed.get());
+                assertEquals(Arrays.asList("kočka"), shared.getTransformedTerms());
+                assertEquals(1, nodeB.getBackendHits());
+                // stems are interned into the pool of the node
+                assertSame(nodeB.getStemPool().get(nodeB.getStemPool().intern(shared.getStem(0))), shared.getStem(0));
+                // found item is kept locally
+                assertTrue(nodeB.getFirstLevel().isPresent("kočky"));
+            } finally {
+                nodeA.getBackend().close();
+                nodeB.getBackend().close();
+            }
+        }
+    }
+
+    @Test
+    public void testNamespacesAreSeparate() throws Exception {
+        try (StemCacheServer server = new StemCacheServer(0, 1000)) {
+            server.start();
+            try (RemoteCache cs = remote(server.getPort(), "cs"); RemoteCache sk = remote(server.getPort(), "sk")) {
+                await(() -> cs.isConnected() && sk.isConnected());
+                cs.pushItem(new TermKey("ženy"), new CacheItem("ženy", "žena"));
+                await(() -> server.size() == 1);
+                assertNotNull(cs.getItem(new TermKey("ženy")));
+                assertNull(sk.getItem(new TermKey("ženy")));
+            }
+        }
+    }
+
+    @Test
+    public void testUnavailableServer() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        CacheMap cacheMap = new CacheMap();
+        cacheMap.setBackend(remote(port, "cs"));
+        try {
+            long start = System.nanoTime();
+            CacheItem item = cacheMap.getOrCompute(new TermKey("psi"), key -> new CacheItem("psi", "pes"));
+            assertEquals("pes", item.getStem(0).toString());
+            assertNull(cacheMap.getBackend().getItem(new TermKey("psi")));
+            assertTrue(System.nanoTime() - start < 1000000000L);
+            assertEquals(0, cacheMap.getBackendHits());
+        } finally {
+            cacheMap.getBackend().close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPortRequired() throws Exception {
+        CacheBackendProvider.forName(RemoteCacheProvider.NAME).create(new CacheMap(), "cs", new HashMap<>());
+    }
+
+    private static CacheMap node(int port) throws Exception {
+        CacheMap cacheMap = new CacheMap();
+        Map<String, String> args = new HashMap<>();
+        args.put("port", Integer.toString(port));
+        args.put("timeout", "1000");
+        CacheBackend backend = CacheBackendProvider.forName(RemoteCacheProvider.NAME).create(cacheMap, "cs", args);
+        cacheMap.setBackend(backend);
+        // lookups are skipped until connected
+        await(((RemoteCache) backend)::isConnected);
+        return cacheMap;
+    }
+
+    private static RemoteCache remote(int port, String namespace) {
+        return new RemoteCache(new InetSocketAddress("localhost", port), namespace, new CacheMap().getStemPool(), 1000, 16, 100);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}